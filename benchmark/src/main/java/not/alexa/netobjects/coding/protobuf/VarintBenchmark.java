@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2024 Not Alexa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package not.alexa.netobjects.coding.protobuf;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * Compares {@link ProtobufBuffer#readLong()} with {@link CodedInputStream#readRawVarint64()} of protobuf-java. The input
+ * is a sequence of {@value #COUNT} varints encoded by protobuf-java, the {@code width} parameter selects the values:
+ * <ul>
+ * <li>{@code small}: values below 128 (one byte).
+ * <li>{@code int}: values below 2^28 (up to four bytes, the unrolled part of {@code readLong()}).
+ * <li>{@code long}: timestamps and other values above 2^32.
+ * <li>{@code negative}: negative values (ten bytes).
+ * <li>{@code mixed}: all of the above.
+ * </ul>
+ * The benchmark is in the package of {@code ProtobufBuffer} since the class isn't public.
+ *
+ * @author notalexa
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5,time=1)
+@Measurement(iterations=5,time=1)
+@Fork(1)
+public class VarintBenchmark {
+	static final int COUNT=1024;
+
+	@Param({"small","int","long","negative","mixed"})
+	String width;
+
+	byte[] data;
+
+	@Setup
+	public void setup() throws IOException {
+		Random random=new Random(4711);
+		long[] values=new long[COUNT];
+		for(int i=0;i<values.length;i++) {
+			values[i]=value(random,width);
+		}
+		int size=0;
+		for(long v:values) {
+			size+=CodedOutputStream.computeUInt64SizeNoTag(v);
+		}
+		data=new byte[size];
+		CodedOutputStream out=CodedOutputStream.newInstance(data);
+		for(long v:values) {
+			out.writeUInt64NoTag(v);
+		}
+		out.checkNoSpaceLeft();
+	}
+
+	private static long value(Random random,String width) {
+		switch(width) {
+			case "small":
+				return random.nextInt(128);
+			case "int":
+				return random.nextInt(1<<28);
+			case "long":
+				return 1_700_000_000_000L+random.nextInt();
+			case "negative":
+				return -1-random.nextInt(Integer.MAX_VALUE);
+			default:
+				return value(random,new String[] {"small","int","long","negative"}[random.nextInt(4)]);
+		}
+	}
+
+	@Benchmark
+	public long protobufBuffer() throws IOException {
+		ProtobufBuffer buffer=new ProtobufBuffer(data);
+		long sum=0;
+		for(int i=0;i<COUNT;i++) {
+			sum+=buffer.readLong();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long codedInputStream() throws IOException {
+		CodedInputStream in=CodedInputStream.newInstance(data);
+		long sum=0;
+		for(int i=0;i<COUNT;i++) {
+			sum+=in.readRawVarint64();
+		}
+		return sum;
+	}
+}
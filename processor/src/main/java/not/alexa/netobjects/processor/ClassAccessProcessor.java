@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2024 Not Alexa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package not.alexa.netobjects.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+/**
+ * Annotation processor generating <code>$ClassAccess</code> classes for classes annotated with <code>@NetworkObject</code>.
+ * The default access factory picks up these classes instead of using reflection. The generated class extends
+ * <code>GeneratedClassAccess</code>, reads and writes fields directly and creates new instances calling the no argument constructor.
+ * <br>Following the reflection based access, a property is read using a getter (<code>x()</code>, <code>getX()</code> or <code>isX()</code>, optionally
+ * with a context argument) and written using a setter (<code>x(v)</code> or <code>setX(v)</code>) if present. Otherwise the field is accessed directly.
+ * Properties not accessible from the package of the class (private fields for example) are left to reflection.
+ * <br>Access is generated for classes which
+ * <ul>
+ * <li>are concrete, not generic and not private (as well as their enclosing classes).
+ * <li>define a static <code>getTypeDescription()</code> method.
+ * <li>don't declare their own <code>ClassAccess</code> member class.
+ * </ul>
+ *
+ * @author notalexa
+ *
+ */
+@SupportedAnnotationTypes({ClassAccessProcessor.NETWORK_OBJECT,ClassAccessProcessor.NETWORK_OBJECTS})
+public class ClassAccessProcessor extends AbstractProcessor {
+	static final String NETWORK_OBJECT="not.alexa.netobjects.api.NetworkObject";
+	static final String NETWORK_OBJECTS="not.alexa.netobjects.api.NetworkObjects";
+	private static final String CONTEXT="not.alexa.netobjects.Context";
+	private static final String ACCESS_CONTEXT="not.alexa.netobjects.types.access.AccessContext";
+	private static final String SUFFIX="$ClassAccess";
+
+	private final Set<String> generated=new HashSet<>();
+
+	public ClassAccessProcessor() {
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for(TypeElement annotation:annotations) {
+			for(Element element:roundEnv.getElementsAnnotatedWith(annotation)) {
+				if(element.getKind()==ElementKind.CLASS) {
+					TypeElement type=(TypeElement)element;
+					if(generated.add(type.getQualifiedName().toString())&&isSupported(type)) try {
+						generate(type);
+					} catch(IOException e) {
+						processingEnv.getMessager().printMessage(Kind.ERROR, "Failed to generate class access: "+e.getMessage(), type);
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private boolean isSupported(TypeElement type) {
+		if(type.getModifiers().contains(Modifier.ABSTRACT)||!type.getTypeParameters().isEmpty()) {
+			return false;
+		}
+		for(Element rover=type;rover.getKind().isClass()||rover.getKind().isInterface();rover=rover.getEnclosingElement()) {
+			TypeElement t=(TypeElement)rover;
+			if(t.getModifiers().contains(Modifier.PRIVATE)||t.getNestingKind()==NestingKind.LOCAL||t.getNestingKind()==NestingKind.ANONYMOUS) {
+				return false;
+			}
+		}
+		for(TypeElement member:ElementFilter.typesIn(type.getEnclosedElements())) {
+			if(member.getSimpleName().contentEquals("ClassAccess")) {
+				return false;
+			}
+		}
+		for(ExecutableElement m:ElementFilter.methodsIn(type.getEnclosedElements())) {
+			if(m.getSimpleName().contentEquals("getTypeDescription")&&m.getParameters().isEmpty()
+					&&m.getModifiers().contains(Modifier.STATIC)&&!m.getModifiers().contains(Modifier.PRIVATE)) {
+				return true;
+			}
+		}
+		processingEnv.getMessager().printMessage(Kind.NOTE, "No static getTypeDescription() method. Class access is not generated.", type);
+		return false;
+	}
+
+	private void generate(TypeElement type) throws IOException {
+		String packageName=getPackage(type).getQualifiedName().toString();
+		String className=processingEnv.getElementUtils().getBinaryName(type).toString()+SUFFIX;
+		String simpleName=packageName.length()==0?className:className.substring(packageName.length()+1);
+		String typeName=type.getQualifiedName().toString();
+		List<Property> properties=collectProperties(type,packageName);
+		JavaFileObject file=processingEnv.getFiler().createSourceFile(className, type);
+		try(PrintWriter writer=new PrintWriter(file.openWriter())) {
+			if(packageName.length()>0) {
+				writer.println("package "+packageName+";");
+				writer.println();
+			}
+			writer.println("/**");
+			writer.println(" * Generated access for {@link "+typeName+"}.");
+			writer.println(" */");
+			writer.println("@SuppressWarnings({\"unchecked\",\"rawtypes\"})");
+			writer.println("public final class "+simpleName+" extends not.alexa.netobjects.types.access.GeneratedClassAccess {");
+			writer.println("\tpublic "+simpleName+"(not.alexa.netobjects.types.access.AccessFactory factory,not.alexa.netobjects.types.access.RuntimeInfo constructor) {");
+			writer.print("\t\tsuper(factory,"+typeName+".class,(not.alexa.netobjects.types.ClassTypeDefinition)"+typeName+".getTypeDescription(),constructor");
+			for(Property property:properties) {
+				writer.print(",\""+property.name+"\"");
+			}
+			writer.println(");");
+			writer.println("\t}");
+			if(hasConstructor(type,packageName)) {
+				writer.println();
+				writer.println("\t@Override");
+				writer.println("\tprotected Object create() {");
+				writer.println("\t\treturn new "+typeName+"();");
+				writer.println("\t}");
+			}
+			writer.println();
+			writer.println("\t@Override");
+			writer.println("\tprotected Object get(not.alexa.netobjects.types.access.AccessContext context,Object o,int slot) throws Throwable {");
+			writer.println("\t\t"+typeName+" t=("+typeName+")o;");
+			writer.println("\t\tswitch(slot) {");
+			for(int i=0;i<properties.size();i++) {
+				writer.println("\t\t\tcase "+i+":return "+properties.get(i).getter+";");
+			}
+			writer.println("\t\t}");
+			writer.println("\t\treturn null;");
+			writer.println("\t}");
+			writer.println();
+			writer.println("\t@Override");
+			writer.println("\tprotected boolean set(not.alexa.netobjects.types.access.AccessContext context,Object o,int slot,Object v) throws Throwable {");
+			writer.println("\t\t"+typeName+" t=("+typeName+")o;");
+			writer.println("\t\tswitch(slot) {");
+			for(int i=0;i<properties.size();i++) {
+				if(properties.get(i).setter!=null) {
+					writer.println("\t\t\tcase "+i+":"+properties.get(i).setter+";");
+					writer.println("\t\t\t\treturn true;");
+				}
+			}
+			writer.println("\t\t}");
+			writer.println("\t\treturn false;");
+			writer.println("\t}");
+			writer.println("}");
+		}
+	}
+
+	/**
+	 * Collect the properties of the type. Fields are resolved beginning at the type walking up the class hierarchy.
+	 * Fields declared more than once are ambiguous and left to reflection.
+	 *
+	 * @param type the type
+	 * @param packageName the package of the generated class
+	 * @return the properties accessible by the generated class
+	 */
+	private List<Property> collectProperties(TypeElement type,String packageName) {
+		Map<String,VariableElement> fields=new LinkedHashMap<>();
+		Set<String> ambiguous=new HashSet<>();
+		List<ExecutableElement> methods=new ArrayList<>();
+		for(TypeElement rover=type;rover!=null;rover=getSuperclass(rover)) {
+			for(VariableElement field:ElementFilter.fieldsIn(rover.getEnclosedElements())) {
+				if(!field.getModifiers().contains(Modifier.STATIC)) {
+					String name=field.getSimpleName().toString();
+					if(fields.containsKey(name)) {
+						ambiguous.add(name);
+					} else {
+						fields.put(name, field);
+					}
+				}
+			}
+			for(ExecutableElement method:ElementFilter.methodsIn(rover.getEnclosedElements())) {
+				if(!method.getModifiers().contains(Modifier.STATIC)&&isAccessible(method,packageName)) {
+					methods.add(method);
+				}
+			}
+		}
+		List<Property> properties=new ArrayList<>();
+		for(VariableElement field:fields.values()) {
+			String name=field.getSimpleName().toString();
+			if(!ambiguous.contains(name)) {
+				Property property=new Property(name,field,methods,isAccessible(field,packageName));
+				if(property.getter!=null) {
+					properties.add(property);
+				}
+			}
+		}
+		return properties;
+	}
+
+	private boolean hasConstructor(TypeElement type,String packageName) {
+		if(type.getNestingKind()==NestingKind.MEMBER&&!type.getModifiers().contains(Modifier.STATIC)) {
+			return false;
+		}
+		for(ExecutableElement c:ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if(c.getParameters().isEmpty()&&isAccessible(c,packageName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isAccessible(Element member,String packageName) {
+		Set<Modifier> modifiers=member.getModifiers();
+		if(modifiers.contains(Modifier.PUBLIC)) {
+			return true;
+		} else if(modifiers.contains(Modifier.PRIVATE)) {
+			return false;
+		} else {
+			return getPackage(member).getQualifiedName().contentEquals(packageName);
+		}
+	}
+
+	private PackageElement getPackage(Element element) {
+		while(element.getKind()!=ElementKind.PACKAGE) {
+			element=element.getEnclosingElement();
+		}
+		return (PackageElement)element;
+	}
+
+	private TypeElement getSuperclass(TypeElement type) {
+		TypeMirror superclass=type.getSuperclass();
+		if(superclass.getKind()==TypeKind.DECLARED) {
+			TypeElement element=(TypeElement)((DeclaredType)superclass).asElement();
+			return element.getQualifiedName().contentEquals("java.lang.Object")?null:element;
+		}
+		return null;
+	}
+
+	/**
+	 * A property of the class. Getter and setter are the java expressions reading and writing the property.
+	 * The object is <code>t</code>, the new value <code>v</code> and the access context <code>context</code>.
+	 */
+	private class Property {
+		private final String name;
+		private String getter;
+		private String setter;
+
+		private Property(String name,VariableElement field,List<ExecutableElement> methods,boolean accessible) {
+			this.name=name;
+			TypeMirror type=field.asType();
+			String s=Character.toUpperCase(name.charAt(0))+name.substring(1);
+			int getterPrio=-1;
+			int setterPrio=-1;
+			for(ExecutableElement method:methods) {
+				String methodName=method.getSimpleName().toString();
+				if(methodName.equals(name)||methodName.equals("get"+s)||methodName.equals("is"+s)) {
+					int prio=getPrio(method,0);
+					if(prio>getterPrio&&isSameType(method.getReturnType(),type)) {
+						getterPrio=prio;
+						getter="t."+methodName+"("+getArgument(prio)+")";
+					}
+				}
+				if((methodName.equals(name)||methodName.equals("set"+s))&&method.getParameters().size()>0) {
+					int prio=getPrio(method,1);
+					if(prio>setterPrio&&isSameType(method.getParameters().get(method.getParameters().size()-1).asType(),type)) {
+						setterPrio=prio;
+						String argument=getArgument(prio);
+						setter="t."+methodName+"("+argument+(argument.length()>0?",":"")+cast(type)+"v)";
+					}
+				}
+			}
+			if(accessible) {
+				if(getter==null) {
+					getter="t."+name;
+				}
+				if(setter==null&&!field.getModifiers().contains(Modifier.FINAL)) {
+					setter="t."+name+"="+cast(type)+"v";
+				}
+			}
+		}
+
+		private int getPrio(ExecutableElement method,int type) {
+			List<? extends VariableElement> parameters=method.getParameters();
+			if(parameters.size()==type) {
+				return 1;
+			} else if(parameters.size()==type+1) {
+				String parameterType=processingEnv.getTypeUtils().erasure(parameters.get(0).asType()).toString();
+				if(CONTEXT.equals(parameterType)) {
+					return 2;
+				} else if(ACCESS_CONTEXT.equals(parameterType)) {
+					return 3;
+				}
+			}
+			return -1;
+		}
+
+		private String getArgument(int prio) {
+			switch(prio) {
+				case 2:return "context.getContext()";
+				case 3:return "context";
+			}
+			return "";
+		}
+
+		private boolean isSameType(TypeMirror t1,TypeMirror t2) {
+			return processingEnv.getTypeUtils().isSameType(t1, t2);
+		}
+
+		private String cast(TypeMirror type) {
+			if(type.getKind().isPrimitive()) {
+				return "("+processingEnv.getTypeUtils().boxedClass((PrimitiveType)type).getQualifiedName()+")";
+			} else {
+				return "("+processingEnv.getTypeUtils().erasure(type)+")";
+			}
+		}
+	}
+}
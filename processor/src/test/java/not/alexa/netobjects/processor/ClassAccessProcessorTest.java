@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2024 Not Alexa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package not.alexa.netobjects.processor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import not.alexa.netobjects.Context;
+import not.alexa.netobjects.coding.json.JsonCodingScheme;
+import not.alexa.netobjects.types.DefaultTypeLoader;
+import not.alexa.netobjects.types.TypeDefinition;
+import not.alexa.netobjects.types.access.Access;
+import not.alexa.netobjects.types.access.AccessFactory;
+import not.alexa.netobjects.types.access.GeneratedClassAccess;
+
+public class ClassAccessProcessorTest {
+	private static final String SOURCE=String.join("\n",
+			"package sample;",
+			"import not.alexa.netobjects.api.NetworkObject;",
+			"import not.alexa.netobjects.types.ClassTypeDefinition;",
+			"import not.alexa.netobjects.types.PrimitiveTypeDefinition;",
+			"import not.alexa.netobjects.types.TypeDefinition;",
+			"@NetworkObject",
+			"public class Point {",
+			"	private static ClassTypeDefinition DESCR=new ClassTypeDefinition(Point.class);",
+			"	static {",
+			"		DESCR.createBuilder()",
+			"			.createField(\"x\", PrimitiveTypeDefinition.getTypeDescription(Integer.TYPE)).setOptional(true).build()",
+			"			.createField(\"label\", PrimitiveTypeDefinition.getTypeDescription(String.class)).setOptional(true).build()",
+			"			.createField(\"secret\", PrimitiveTypeDefinition.getTypeDescription(String.class)).setOptional(true).build()",
+			"			.build();",
+			"	}",
+			"	public static TypeDefinition getTypeDescription() {",
+			"		return DESCR;",
+			"	}",
+			"	int x;",
+			"	String label;",
+			"	private String secret;",
+			"	public int labelCalls;",
+			"	public Point() {",
+			"	}",
+			"	public Point(int x,String label,String secret) {",
+			"		this.x=x;",
+			"		this.label=label;",
+			"		this.secret=secret;",
+			"	}",
+			"	public String getLabel() {",
+			"		labelCalls++;",
+			"		return label;",
+			"	}",
+			"	public String toString() {",
+			"		return x+\":\"+label+\":\"+secret;",
+			"	}",
+			"	@NetworkObject",
+			"	public static class Hidden {",
+			"		int y;",
+			"	}",
+			"}");
+
+	private static final String FILTERED_SOURCE=String.join("\n",
+			"package sample;",
+			"import java.io.File;",
+			"import java.util.regex.Pattern;",
+			"import not.alexa.netobjects.api.NetworkObject;",
+			"import not.alexa.netobjects.types.ClassTypeDefinition;",
+			"import not.alexa.netobjects.types.PrimitiveTypeDefinition;",
+			"import not.alexa.netobjects.types.TypeDefinition;",
+			"@NetworkObject",
+			"public class Doc {",
+			"	private static ClassTypeDefinition DESCR=new ClassTypeDefinition(Doc.class);",
+			"	static {",
+			"		DESCR.createBuilder()",
+			"			.createField(\"file\", PrimitiveTypeDefinition.getTypeDescription(String.class)).setOptional(true).build()",
+			"			.createField(\"pattern\", PrimitiveTypeDefinition.getTypeDescription(String.class)).setOptional(true).build()",
+			"			.build();",
+			"	}",
+			"	public static TypeDefinition getTypeDescription() {",
+			"		return DESCR;",
+			"	}",
+			"	public File file;",
+			"	public Pattern pattern;",
+			"	public Doc() {",
+			"	}",
+			"	public Doc(File file,Pattern pattern) {",
+			"		this.file=file;",
+			"		this.pattern=pattern;",
+			"	}",
+			"	public String toString() {",
+			"		return file+\":\"+pattern;",
+			"	}",
+			"}");
+
+	private static URLClassLoader loader;
+
+	public ClassAccessProcessorTest() {
+	}
+
+	@BeforeClass
+	public static void compile() throws IOException {
+		File dir=Files.createTempDirectory("processor").toFile();
+		File source=new File(dir,"sample/Point.java");
+		File filteredSource=new File(dir,"sample/Doc.java");
+		source.getParentFile().mkdirs();
+		Files.write(source.toPath(), SOURCE.getBytes(StandardCharsets.UTF_8));
+		Files.write(filteredSource.toPath(), FILTERED_SOURCE.getBytes(StandardCharsets.UTF_8));
+		JavaCompiler compiler=ToolProvider.getSystemJavaCompiler();
+		try(StandardJavaFileManager fileManager=compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+			JavaCompiler.CompilationTask task=compiler.getTask(null, fileManager, null,
+					Arrays.asList("-d",dir.getAbsolutePath(),"-classpath",System.getProperty("java.class.path")),
+					null, fileManager.getJavaFileObjects(source,filteredSource));
+			task.setProcessors(Arrays.asList(new ClassAccessProcessor()));
+			assertTrue(task.call());
+		}
+		loader=new URLClassLoader(new URL[] { dir.toURI().toURL() },ClassAccessProcessorTest.class.getClassLoader());
+	}
+
+	@Test
+	public void generatedTest() throws Exception {
+		Class<?> pointClass=loader.loadClass("sample.Point");
+		assertTrue(GeneratedClassAccess.class.isAssignableFrom(loader.loadClass("sample.Point$ClassAccess")));
+		// No type description
+		try {
+			loader.loadClass("sample.Point$Hidden$ClassAccess");
+			fail();
+		} catch(ClassNotFoundException e) {
+		}
+		Context context=Context.createRootContext(new DefaultTypeLoader(loader));
+		TypeDefinition type=(TypeDefinition)pointClass.getMethod("getTypeDescription").invoke(null);
+		Access access=AccessFactory.getDefault().resolve(context, type);
+		assertTrue(access instanceof GeneratedClassAccess);
+	}
+
+	@Test
+	public void roundTripTest() throws Exception {
+		Class<?> pointClass=loader.loadClass("sample.Point");
+		Context context=Context.createRootContext(new DefaultTypeLoader(loader));
+		Object point=pointClass.getConstructor(Integer.TYPE,String.class,String.class).newInstance(42,"label","secret");
+		byte[] encoded=JsonCodingScheme.DEFAULT_SCHEME.createEncoder(context).encode(point).asBytes();
+		// The getter is used
+		assertEquals(1, pointClass.getField("labelCalls").get(point));
+		Object decoded=JsonCodingScheme.DEFAULT_SCHEME.createDecoder(context, encoded).decode(Object.class);
+		assertEquals(pointClass, decoded.getClass());
+		// The private field is set using reflection
+		assertEquals("42:label:secret", decoded.toString());
+		assertArrayEquals(encoded, JsonCodingScheme.DEFAULT_SCHEME.createEncoder(context).encode(decoded).asBytes());
+	}
+
+	@Test
+	public void filteredFieldsTest() throws Exception {
+		Class<?> docClass=loader.loadClass("sample.Doc");
+		assertTrue(GeneratedClassAccess.class.isAssignableFrom(loader.loadClass("sample.Doc$ClassAccess")));
+		Context context=Context.createRootContext(new DefaultTypeLoader(loader));
+		// File and Pattern are coded as strings using coding filters
+		Object doc=docClass.getConstructor(File.class,Pattern.class).newInstance(new File("/tmp/doc"),Pattern.compile("a.*"));
+		byte[] encoded=JsonCodingScheme.DEFAULT_SCHEME.createEncoder(context).encode(doc).asBytes();
+		Object decoded=JsonCodingScheme.DEFAULT_SCHEME.createDecoder(context, encoded).decode(Object.class);
+		assertEquals(docClass, decoded.getClass());
+		assertEquals(new File("/tmp/doc"), docClass.getField("file").get(decoded));
+		assertEquals("a.*", ((Pattern)docClass.getField("pattern").get(decoded)).pattern());
+		assertArrayEquals(encoded, JsonCodingScheme.DEFAULT_SCHEME.createEncoder(context).encode(decoded).asBytes());
+	}
+}
@@ -39,6 +39,10 @@ public class NativeProtobufSupport
 		return o instanceof GeneratedMessageV3?((GeneratedMessageV3)o).toByteArray():null;
 	}
 
+	public boolean isNativeType(Class<?> clazz) {
+		return GeneratedMessageV3.class.isAssignableFrom(clazz);
+	}
+
 	public AccessibleObject getProtobufObject(AccessContext context,Access fieldAccess,byte[] value, int offset, int len) {
 		Class<?> clazz=fieldAccess.getType().asClass(fieldAccess.getAccessLoader());
 		if(GeneratedMessageV3.class.isAssignableFrom(clazz)) try {
@@ -15,6 +15,9 @@
  */
 package not.alexa.netobjects.coding.protobuf;
 
+import java.util.Map;
+import java.util.Set;
+
 import not.alexa.netobjects.BaseException;
 import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.CodecType;
 import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.PrimitiveTypeCodec;
@@ -23,6 +26,7 @@ import not.alexa.netobjects.coding.protobuf.ProtobufDecoder.Creator;
 import not.alexa.netobjects.types.AccessibleObject;
 import not.alexa.netobjects.types.ClassTypeDefinition;
 import not.alexa.netobjects.types.ClassTypeDefinition.Field;
+import not.alexa.netobjects.types.Flavour;
 import not.alexa.netobjects.types.access.Access;
 import not.alexa.netobjects.types.access.AccessContext;
 
@@ -39,7 +43,7 @@ abstract class AbstractCodec implements Creator {
 		}
 	}
 
-	protected Access access;
+	protected final Access access;
 
 	AbstractCodec(Access classAccess) {
 		this.access=classAccess;
@@ -95,51 +99,87 @@ abstract class AbstractCodec implements Creator {
 	public AccessibleObject finalize(AccessContext context,AccessibleObject o, ProtobufDecoder.ArrayEntry arrays,int[] marker) throws BaseException {
 		return o;
 	}
+
+	/**
+	 * Resolve all codecs reachable from this codec. Codecs which cannot be resolved are reported and resolved lazily
+	 * on first use as before.
+	 * 
+	 * @param scheme the coding scheme
+	 * @param prepared the codecs already prepared
+	 * @param failures the failures by (qualified) field name
+	 * @see ProtobufCodingScheme#prepare(not.alexa.netobjects.Context, Class...)
+	 */
+	void prepare(ProtobufCodingScheme scheme,Set<AbstractCodec> prepared,Map<String,BaseException> failures) {
+	}
 	
 	/**
 	 * Class organizing {@link PrimitiveTypeCodecs} and {@link AbstractCodec} entries.
 	 * Each field (and the component of an array) has one of this codecs assigned.
+	 * <br>The codec is resolved lazily. Since codecs are shared between threads, the resolved codec is published
+	 * through a volatile field (resolving the codec concurrently in two threads is harmless, one of the equivalent
+	 * codecs wins).
 	 * 
 	 * @author notalexa
 	 */
 	public class CodecHolder {
-		int offset;
-		PrimitiveTypeCodec primitiveTypeCodec;
-		AbstractCodec classCodec;
+		final int offset;
+		volatile PrimitiveTypeCodec primitiveTypeCodec;
+		volatile AbstractCodec classCodec;
 		
 		CodecHolder(int offset) {
 			this.offset=offset;
 		}
 		
-		protected void resolveArrayCodec(ProtobufCodingScheme scheme,Access fieldAccess) {
-			boolean isPackable=false;
-			classCodec=isPackable?new PackedArrayCodec(access,fieldAccess):new ArrayCodec(offset,fieldAccess);
+		protected AbstractCodec createArrayCodec(ProtobufCodingScheme scheme,CodecType type,Access fieldAccess) {
+			return scheme.getArrayCodec(offset,type,fieldAccess);
+		}
+		
+		protected AbstractCodec createAnyCodec(ProtobufCodingScheme scheme,Access fieldAccess) {
+			return scheme.getAnyCodec(fieldAccess);
 		}
 		
 		void resolveCodec(ProtobufCodingScheme scheme,CodecType type,Access fieldAccess) throws BaseException {
+			AbstractCodec codec;
 			switch(fieldAccess.getType().getFlavour()) {
 				case PrimitiveType: primitiveTypeCodec=scheme.getPrimitiveTypeCodec(type,fieldAccess.getType().asClass(access.getAccessLoader()));
-					break;
+					return;
 				case EnumType:primitiveTypeCodec=scheme.getEnumCodec(fieldAccess.getType().asClass(access.getAccessLoader()));
-					break;
-				case ClassType: classCodec=scheme.getClassCodec(fieldAccess);
-					if(classCodec==null) {
-						classCodec=new ClassCodec(fieldAccess);
+					return;
+				case ClassType: codec=scheme.getClassCodec(fieldAccess);
+					if(codec==null) {
+						codec=new ClassCodec(fieldAccess);
 					}
 					break;
-				case InterfaceType: classCodec=scheme.getAnyCodec(fieldAccess);
+				case InterfaceType: codec=createAnyCodec(scheme,fieldAccess);
 					break;
-				case ArrayType: resolveArrayCodec(scheme,fieldAccess);
+				case ArrayType: codec=createArrayCodec(scheme,type,fieldAccess);
 					break;
 				default: throw new BaseException(BaseException.FORBIDDEN, "Encoding object of type "+fieldAccess.getType().getJavaClassType());
 			}
+			classCodec=codec;
+		}
+		
+		void prepare(ProtobufCodingScheme scheme,CodecType type,Access fieldAccess,Set<AbstractCodec> prepared,Map<String,BaseException> failures) throws BaseException {
+			if(primitiveTypeCodec==null&&classCodec==null) {
+				if(fieldAccess.getType().getFlavour()==Flavour.ClassType&&scheme.isNativeType(fieldAccess)) {
+					// Left unresolved: the field is encoded and decoded by the native support
+					return;
+				}
+				resolveCodec(scheme,type,fieldAccess);
+			}
+			AbstractCodec codec=classCodec;
+			if(codec!=null&&prepared.add(codec)) {
+				codec.prepare(scheme,prepared,failures);
+			}
 		}
 		
 		public boolean encode(ProtobufEncoder encoder,ProtobufBuffer buffer,int index,Object o) throws BaseException {
+			PrimitiveTypeCodec primitiveTypeCodec=this.primitiveTypeCodec;
+			AbstractCodec classCodec;
 			if(primitiveTypeCodec!=null) {
 				primitiveTypeCodec.encode(buffer, index, o);
 				return true;
-			} else if(classCodec!=null) {
+			} else if((classCodec=this.classCodec)!=null) {
 				classCodec.encode(encoder,buffer, index,o);
 				return true;
 			} else {
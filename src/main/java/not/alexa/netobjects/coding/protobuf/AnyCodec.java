@@ -16,7 +16,8 @@
  */
 package not.alexa.netobjects.coding.protobuf;
 
-import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
 
 import not.alexa.netobjects.BaseException;
 import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.BufferWriter;
@@ -40,8 +41,18 @@ import not.alexa.netobjects.types.access.DefaultAccessibleObject;
  * @author notalexa
  */
 class AnyCodec extends ClassCodec {
-	Access interfaceAccess;
+	final Access interfaceAccess;
+	final boolean lazy;
 	AnyCodec(Access interfaceAccess) {
+		this(interfaceAccess,false);
+	}
+	
+	/**
+	 * 
+	 * @param interfaceAccess the access of the interface
+	 * @param lazy if {@code true}, messages are decoded lazily (see {@code protobuf:lazy} in {@link ProtobufCodingScheme})
+	 */
+	AnyCodec(Access interfaceAccess,boolean lazy) {
 		super(new Access.AbstractAccess() {
 			Access objectTypeAccess=new SimpleTypeAccess(getFactory(), PrimitiveTypeDefinition.getTypeDescription(ObjectType.class));
 	
@@ -115,6 +126,7 @@ class AnyCodec extends ClassCodec {
 			}
 	    });
 		this.interfaceAccess=interfaceAccess;
+		this.lazy=lazy;
 	}
 	@Override
 	public void encode(ProtobufEncoder encoder,ProtobufBuffer buffer, Object o) throws BaseException {
@@ -130,7 +142,7 @@ class AnyCodec extends ClassCodec {
 					return;
 				}
 			} else if(o instanceof BufferWriter) {
-				fieldCodecs[0].encode(encoder,buffer,classType);
+				encodeType(encoder,buffer,classType);
 				((BufferWriter)o).write(buffer, 2);
 				return;
 			} else {
@@ -143,7 +155,7 @@ class AnyCodec extends ClassCodec {
 		}
 		TypeDefinition type=encoder.getContext().resolveType(classType);
 		if(classType!=null) {
-			fieldCodecs[0].encode(encoder,buffer,classType);
+			encodeType(encoder,buffer,classType);
 			switch(type.getFlavour()) {
 				case PrimitiveType:
 					scheme.getPrimitiveTypeCodec(o.getClass()).encode(buffer,2,o);
@@ -156,6 +168,14 @@ class AnyCodec extends ClassCodec {
 					byte[] content=scheme.getProtobufContent(o);
 					if(content!=null) {
 						buffer.write(2, content);
+					} else if(lazy) {
+						// The message is kept undecoded (and may be copied into another stream) and must not reference the dictionary
+						encoder.beginSelfContained();
+						try {
+							scheme.getClassCodec(/*encoder.getContext(),*/access).encode(encoder,buffer,2,o);
+						} finally {
+							encoder.endSelfContained();
+						}
 					} else {
 						scheme.getClassCodec(/*encoder.getContext(),*/access).encode(encoder,buffer,2,o);
 					}
@@ -167,9 +187,48 @@ class AnyCodec extends ClassCodec {
 		}
 	}
 
+	@Override
+	void prepare(ProtobufCodingScheme scheme,Set<AbstractCodec> prepared,Map<String,BaseException> failures) {
+		// The codec of the value depends on the (dynamic) type of the value
+	}
+
+	/**
+	 * Encode the type of the object. If the encoder uses a type dictionary, the first occurrence of a type in the encoder
+	 * defines an id (field 3) which is used instead of the type (as an integer in field 1) afterwards. Types inside the message
+	 * of a lazy "any" field are encoded without the dictionary, that is, such messages are self contained.
+	 * 
+	 * @param encoder the encoder
+	 * @param buffer the buffer
+	 * @param type the type to encode
+	 * @throws BaseException if an error occurs
+	 * @see ProtobufCodingScheme.Builder#setTypeDictionary(boolean)
+	 */
+	private void encodeType(ProtobufEncoder encoder,ProtobufBuffer buffer,ObjectType type) throws BaseException {
+		if(encoder.isTypeDictionary()) {
+			int id=encoder.getTypeId(type);
+			if(id>0) {
+				buffer.write(1, id);
+			} else {
+				fieldCodecs[0].encode(encoder,buffer,type);
+				buffer.write(3, encoder.defineTypeId(type));
+			}
+		} else {
+			fieldCodecs[0].encode(encoder,buffer,type);
+		}
+	}
+
 	@Override
 	public void consume(ClassDefListener listener, int field, long value) throws BaseException {
 		Field[] fields=ProtobufCodingScheme.ANY.getFields();
+		switch(field) {
+			case 1: // Reference to a type of the dictionary
+				listener.mark(0);
+				listener.currentObject().setField(listener,fields[0],access.getFieldAccess(fields[0]).makeAccessible(listener,listener.getType((int)value)));
+				return;
+			case 3: // Definition of a type of the dictionary
+				listener.defineType((int)value,(ObjectType)listener.currentObject().getField(listener,fields[0]).getAssignable(listener));
+				return;
+		}
 		ObjectType type=(ObjectType)listener.currentObject().getField(listener,fields[0]).getAssignable(listener);
 		TypeDefinition def=listener.getContext().resolveType(type);
 		ProtobufCodingScheme scheme=listener.getCodingScheme();
@@ -198,16 +257,18 @@ class AnyCodec extends ClassCodec {
 			Field[] fields=ProtobufCodingScheme.ANY.getFields();
 			ObjectType type=(ObjectType)listener.currentObject().getField(listener,fields[0]).getAssignable(listener);
 			TypeDefinition def=listener.getContext().resolveType(type);
-			if(def==null) {
-				// Unknown implementation
-				DeferredProtobufObject o=new DeferredProtobufObject(listener.getCodingScheme(),listener.getContext(), type, Arrays.copyOfRange(value, offset, offset+len));
+			if(def==null||(lazy&&def.getFlavour()==Flavour.ClassType)) {
+				// Unknown implementation or lazy decoding of a message. Lazy messages are self contained (they don't reference
+				// the type dictionary) and can be decoded later or copied into another stream.
+				DeferredProtobufObject o=new DeferredProtobufObject(listener.getCodingScheme(),listener.getContext(), type, listener.share(value, offset, len));
+				// Messages of unknown types are not self contained
+				o.dictionaryReferences=!lazy&&scheme.isTypeDictionary();
 				listener.mark(1);
 				listener.currentObject().setField(listener,fields[1],scheme.getFactory().resolve(listener.getContext(), DeferredObject.getTypeDescription()).makeAccessible(listener,o.makeProxy(interfaceAccess)));
 				return;
 			}
 			switch(def.getFlavour()) {
 			case PrimitiveType:
-				System.out.println(def);
 				Object v=scheme.getPrimitiveTypeCodec(def.asClass(getClass().getClassLoader())).decode(value,offset,len);
 				listener.mark(1);
 				listener.currentObject().setField(listener,fields[1],new DefaultAccessibleObject(access.getFactory().resolve(listener.getContext(), def),v));
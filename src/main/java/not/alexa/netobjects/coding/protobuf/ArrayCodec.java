@@ -16,6 +16,8 @@
 package not.alexa.netobjects.coding.protobuf;
 
 import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
 
 import not.alexa.netobjects.BaseException;
 import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.CodecType;
@@ -32,8 +34,8 @@ import not.alexa.netobjects.types.access.ArrayTypeAccess;
  */
 class ArrayCodec extends AbstractCodec {
 	private static final int[] ARRAY_MASK={ 0 };
-	private int offset;
-	private ComponentCodec componentCodec;
+	private final int offset;
+	private final ComponentCodec componentCodec;
 
 	ArrayCodec(int offset,Access fieldAccess) {
 		super(fieldAccess);
@@ -74,6 +76,15 @@ class ArrayCodec extends AbstractCodec {
 		return listener.getArray(offset,this);
 	}
 
+	@Override
+	void prepare(ProtobufCodingScheme scheme,Set<AbstractCodec> prepared,Map<String,BaseException> failures) {
+		try {
+			componentCodec.prepare(scheme,CodecType.Default,access.getComponentAccess(),prepared,failures);
+		} catch(BaseException|RuntimeException e) {
+			failures.put(access.getType().toString(),BaseException.normalize(e));
+		}
+	}
+
 	@Override
 	public void consume(ClassDefListener listener, int field, long value) throws BaseException {
 		componentCodec.consume(listener,field,value);
@@ -100,8 +111,8 @@ class ArrayCodec extends AbstractCodec {
 		}
 
 		@Override
-		protected void resolveArrayCodec(ProtobufCodingScheme scheme,Access fieldAccess) {
-			classCodec=new ArrayCodec(offset, fieldAccess) {
+		protected AbstractCodec createArrayCodec(ProtobufCodingScheme scheme,CodecType type,Access fieldAccess) {
+			return new ArrayCodec(offset, fieldAccess) {
 				@Override
 				public ClassDefListener createListener(ClassDefListener parent) throws BaseException {
 					return parent.createChild(newAccessible(parent), this);
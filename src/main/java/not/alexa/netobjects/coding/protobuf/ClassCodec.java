@@ -15,30 +15,49 @@
  */
 package not.alexa.netobjects.coding.protobuf;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
 import not.alexa.netobjects.BaseException;
 import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.CodecType;
+import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.FieldSelector;
+import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.PrimitiveTypeCodec;
+import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.ProjectionDecoder;
+import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.UnknownFieldSupport;
 import not.alexa.netobjects.coding.protobuf.ProtobufDecoder.ArrayEntry;
 import not.alexa.netobjects.coding.protobuf.ProtobufDecoder.ClassDefListener;
 import not.alexa.netobjects.types.AccessibleObject;
 import not.alexa.netobjects.types.ClassTypeDefinition;
 import not.alexa.netobjects.types.ClassTypeDefinition.Field;
 import not.alexa.netobjects.types.Deferred;
+import not.alexa.netobjects.types.Flavour;
 import not.alexa.netobjects.types.access.Access;
 import not.alexa.netobjects.types.access.AccessContext;
 
 /**
  * Class used for encoding an object (a message in protobuf chargon).
+ * <br>Codecs are shared between all threads using the coding scheme. The structure of the codec is fixed
+ * after construction, field codecs are resolved lazily (see {@link CodecHolder}).
  * 
  * @author notalexa
  */
 class ClassCodec extends AbstractCodec {
-	protected int smallest;
-	protected FieldCodec[] fieldCodecs;
-	protected FieldCodec[] fieldCodecsMap;
-	protected int[] mask;
+	/**
+	 * Field numbers are dispatched through an array indexed by number if the largest number is at most four times
+	 * the number of fields (but at least 16) and doesn't exceed this limit. Sparse numbers are dispatched using
+	 * binary search.
+	 */
+	private static final int MAX_DIRECT_DISPATCH=256;
+	protected final FieldCodec[] fieldCodecs;
+	protected final FieldCodec[] orderedCodecs;
+	protected final FieldCodec[] codecsByNumber;
+	protected final int[] numbers;
+	protected final int[] mask;
 	protected int count;
 	protected Checker checker;
 	protected boolean enableObjectRefs;
+	private volatile Projection projection;
 
 	ClassCodec(Access classAccess) {
 		super(classAccess);
@@ -56,69 +75,44 @@ class ClassCodec extends AbstractCodec {
 			}
 		}
 		fieldCodecs=new FieldCodec[fields.length];
-		fieldCodecsMap=new FieldCodec[fields.length];
 		for(int i=0;i<fields.length;i++) {
-			insert(fieldCodecs[i]=new FieldCodec(fields[i]));
+			fieldCodecs[i]=new FieldCodec(fields[i]);
 		}
-		orderCodecs();
-	}
-	
-	private void orderCodecs() {
-		int start=Integer.MAX_VALUE;
-		for(int i=0;i<fieldCodecsMap.length;i++) {
-			if(fieldCodecsMap[i]==null) {
-				throw new RuntimeException("Should not happen. Missing codec at #"+i);
-			}
-			if(fieldCodecsMap[i].f.getNumber()<start) {
-				if(start<Integer.MAX_VALUE) {
-					fieldCodecsMap[i].ordered=start;
-				}
-				start=i;
-			} else {
-				int rover=start;
-				while(true) {
-					if(fieldCodecsMap[rover].ordered<0) {
-						fieldCodecsMap[rover].ordered=i;
-						break;
-					} else if(fieldCodecsMap[fieldCodecsMap[rover].ordered].f.getNumber()>fieldCodecsMap[i].f.getNumber()) {
-						fieldCodecsMap[i].ordered=fieldCodecsMap[rover].ordered;
-						fieldCodecsMap[rover].ordered=i;
-						break;
-					}
-					rover=fieldCodecsMap[rover].ordered;
-				}
-			}
+		// Codecs ordered by field number for encoding and binary search
+		orderedCodecs=fieldCodecs.clone();
+		Arrays.sort(orderedCodecs,(c1,c2)->Integer.compare(c1.f.getNumber(),c2.f.getNumber()));
+		numbers=new int[orderedCodecs.length];
+		for(int i=0;i<orderedCodecs.length;i++) {
+			numbers[i]=orderedCodecs[i].f.getNumber();
 		}
-		smallest=start==Integer.MAX_VALUE?-1:start;
-	}
-	
-	private void insert(FieldCodec codec) {
-		int number=codec.f.getNumber()-1;
-		int index=number%fieldCodecsMap.length;
-		FieldCodec last=fieldCodecsMap[index];
-		if(last==null) {
-			fieldCodecsMap[index]=codec;
-		} else {
-			while(last.next>=0) {
-				last=fieldCodecsMap[last.next];
-			}
-			for(int i=0;i<fieldCodecsMap.length;i++) {
-				if(fieldCodecsMap[i]==null) {
-					fieldCodecsMap[i]=codec;
-					last.next=i;
-					return;
+		int max=numbers.length==0?0:numbers[numbers.length-1];
+		if(max<=Math.min(MAX_DIRECT_DISPATCH,Math.max(16,4*numbers.length))) {
+			codecsByNumber=new FieldCodec[max+1];
+			for(FieldCodec codec:orderedCodecs) {
+				if(codec.f.getNumber()>0) {
+					codecsByNumber[codec.f.getNumber()]=codec;
 				}
 			}
-			throw new RuntimeException("Should not happen. Too many codecs registered");
+		} else {
+			// Sparse field numbers
+			codecsByNumber=null;
 		}
 	}
-	
+
+	/**
+	 * 
+	 * @param n the field number
+	 * @return the codec of the field with the given number or {@code null} if the field is unknown
+	 */
 	private FieldCodec getCodec(int n) {
-		int index=(n-1)%fieldCodecsMap.length;
-		while(fieldCodecsMap[index].f.getNumber()!=n) {
-			index=fieldCodecsMap[index].next;
+		FieldCodec codec;
+		if(codecsByNumber!=null) {
+			codec=n>=0&&n<codecsByNumber.length?codecsByNumber[n]:null;
+		} else {
+			int index=Arrays.binarySearch(numbers, n);
+			codec=index>=0?orderedCodecs[index]:null;
 		}
-		return fieldCodecsMap[index];
+		return codec;
 	}
 	
 	public boolean enableObjectRefs() {
@@ -155,19 +149,29 @@ class ClassCodec extends AbstractCodec {
 
 	@Override
 	public void encode(ProtobufEncoder encoder,ProtobufBuffer buffer, Object o) throws BaseException {
+		// The codec is shared between threads: Use the access of a deferred object locally
+		Access access=this.access;
 		if(o instanceof Deferred) {
 			Deferred<?,?> deferred=(Deferred<?, ?>)o;
 			o=deferred.getCodingObject(encoder);
 			access=deferred.getCodingAccess(encoder,access.getFactory());
 		}
-		int rover=smallest;
-		while(rover>=0) {
-			FieldCodec field=fieldCodecsMap[rover];
+		boolean direct=access==this.access;
+		for(FieldCodec field:orderedCodecs) {
+			if(direct&&field.primitiveType!=null) {
+				field.encodePrimitive(encoder,buffer,o);
+				continue;
+			}
 			Object val=access.getField(encoder,o,field.f);
 			if(val!=null) {
 				field.encode(encoder,buffer, val);
 			}
-			rover=field.ordered;
+		}
+		if(o instanceof UnknownFieldSupport) {
+			byte[] unknownFields=((UnknownFieldSupport)o).getUnknownFields();
+			if(unknownFields!=null) {
+				buffer.write(0,unknownFields);
+			}
 		}
 	}
 	
@@ -175,6 +179,17 @@ class ClassCodec extends AbstractCodec {
 		return mask;
 	}
 
+	@Override
+	void prepare(ProtobufCodingScheme scheme,Set<AbstractCodec> prepared,Map<String,BaseException> failures) {
+		for(FieldCodec codec:fieldCodecs) {
+			try {
+				codec.prepare(scheme,codec.getCodecType(),access.getFieldAccess(codec.f),prepared,failures);
+			} catch(BaseException|RuntimeException e) {
+				failures.put(access.getType()+"."+codec.f.getName(),BaseException.normalize(e));
+			}
+		}
+	}
+
 	@Override
 	public void consumeInternal(ClassDefListener listener,int field, Field f,long value) throws BaseException {
 		AccessibleObject obj=listener.resolveObjectReference((int)value);
@@ -186,41 +201,178 @@ class ClassCodec extends AbstractCodec {
 	}
 
 
+	/**
+	 * 
+	 * @param listener the listener
+	 * @param codec the codec of the field
+	 * @return {@code true} if the field is not selected for decoding (in which case the field is marked as present)
+	 * @see ProjectionDecoder#decode(Class, FieldSelector)
+	 */
+	private boolean isProjected(ClassDefListener listener,FieldCodec codec) {
+		FieldSelector selector=listener.getFieldSelector();
+		if(selector!=null&&getProjection(selector).skipped[codec.offset]) {
+			listener.mark(codec.offset);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The projection of the last selector is kept since selectors are usually reused for all messages of a stream.
+	 * 
+	 * @param selector the field selector
+	 * @return the projection of this codec for the given selector
+	 */
+	private Projection getProjection(FieldSelector selector) {
+		Projection projection=this.projection;
+		if(projection==null||projection.selector!=selector) {
+			this.projection=projection=new Projection(selector);
+		}
+		return projection;
+	}
+
 	@Override
 	public void consume(ClassDefListener listener,int field, long value) throws BaseException {
-		getCodec(field).consume(listener,field,value);
+		FieldCodec codec=getCodec(field);
+		if(codec==null) {
+			listener.skip(field,value);
+		} else if(!isProjected(listener,codec)) {
+			codec.consume(listener,field,value);
+		}
 	}
 	
 	@Override
 	public void consume(ClassDefListener listener, int field, byte[] value, int offset, int len) throws BaseException {
-		getCodec(field).consume(listener,field,value,offset,len);
+		FieldCodec codec=getCodec(field);
+		if(codec==null) {
+			listener.skip(field,value,offset,len);
+		} else if(!isProjected(listener,codec)) {
+			codec.consume(listener,field,value,offset,len);
+		}
 	}
 
 	@Override
 	public void consume(ClassDefListener listener, int field, AccessibleObject o) throws BaseException {
 		FieldCodec codec=getCodec(field);
+		if(codec==null) {
+			throw new BaseException(BaseException.BAD_REQUEST,"Unknown field #"+field+" in "+access.getType());
+		}
 		listener.currentObject().setField(listener,codec.f, o);
 		listener.mark(codec.offset);
 	}
 
 	
 	class FieldCodec extends CodecHolder {
-		Field f;
-		int next=-1;
-		int ordered=-1;
+		final Field f;
+		/**
+		 * The primitive java type of the field if the field can be encoded and decoded without boxing (see {@link Access#getPrimitiveFieldType(Field)}).
+		 */
+		volatile Class<?> primitiveType;
 		FieldCodec(Field f) {
 			super(f.getIndex());
 			this.f=f;
 		}
 		
-		private void resolveCodec(ProtobufCodingScheme scheme) throws BaseException {
-			CodecType type=CodecType.Default;
+		private CodecType getCodecType() {
 			if(f.hasHint("protobuf:fixed")) {
-				type=CodecType.Fixed;
+				return CodecType.Fixed;
 			} else if(f.hasHint("protobuf:signed")) {
-				type=CodecType.Signed;
+				return CodecType.Signed;
+			} else {
+				return CodecType.Default;
+			}
+		}
+
+		@Override
+		protected AbstractCodec createAnyCodec(ProtobufCodingScheme scheme,Access fieldAccess) {
+			return scheme.getAnyCodec(fieldAccess,f.hasHint("protobuf:lazy"));
+		}
+
+		/**
+		 * Resolve the codec of the field. The hint {@code protobuf:lazy} requires a proxy and is rejected if the field is not
+		 * an interface field.
+		 */
+		@Override
+		void resolveCodec(ProtobufCodingScheme scheme,CodecType type,Access fieldAccess) throws BaseException {
+			if(fieldAccess.getType().getFlavour()!=Flavour.InterfaceType&&f.hasHint("protobuf:lazy")) {
+				throw new BaseException(BaseException.BAD_REQUEST,"Hint protobuf:lazy applies to interface fields only (field "+f.getName()+" of "+access.getType()+")");
+			}
+			super.resolveCodec(scheme,type,fieldAccess);
+			PrimitiveTypeCodec primitiveTypeCodec=this.primitiveTypeCodec;
+			if(primitiveTypeCodec!=null) {
+				Class<?> primitiveType=access.getPrimitiveFieldType(f);
+				if(primitiveType!=null&&primitiveType==primitiveTypeCodec.getPrimitiveType()) {
+					this.primitiveType=primitiveType;
+				}
+			}
+		}
+
+		private void resolveCodec(ProtobufCodingScheme scheme) throws BaseException {
+			resolveCodec(scheme,getCodecType(),access.getFieldAccess(f));
+		}
+
+		/**
+		 * Encode the (primitive) field of the given object without boxing the value.
+		 * 
+		 * @param encoder the encoder
+		 * @param buffer the buffer
+		 * @param o the object containing the field
+		 * @throws BaseException if an error occurs
+		 */
+		void encodePrimitive(ProtobufEncoder encoder,ProtobufBuffer buffer,Object o) throws BaseException {
+			PrimitiveTypeCodec codec=primitiveTypeCodec;
+			Class<?> primitiveType=this.primitiveType;
+			boolean hasDefault=f.getDefaultValue()!=null;
+			if(primitiveType==int.class) {
+				int v=access.getInt(encoder,o,f);
+				if(!hasDefault||!f.isDefault(v)) {
+					codec.encodeLong(buffer,f.getNumber(),v);
+				}
+			} else if(primitiveType==long.class) {
+				long v=access.getLong(encoder,o,f);
+				if(!hasDefault||!f.isDefault(v)) {
+					codec.encodeLong(buffer,f.getNumber(),v);
+				}
+			} else if(primitiveType==boolean.class) {
+				boolean v=access.getBoolean(encoder,o,f);
+				if(!hasDefault||!f.isDefault(v)) {
+					codec.encodeLong(buffer,f.getNumber(),v?1:0);
+				}
+			} else if(primitiveType==double.class) {
+				double v=access.getDouble(encoder,o,f);
+				if(!hasDefault||!f.isDefault(v)) {
+					codec.encodeDouble(buffer,f.getNumber(),v);
+				}
+			} else {
+				float v=access.getFloat(encoder,o,f);
+				if(!hasDefault||!f.isDefault(v)) {
+					codec.encodeDouble(buffer,f.getNumber(),v);
+				}
+			}
+		}
+
+		/**
+		 * Decode the (primitive) value and set the field on the given object without boxing the value.
+		 * 
+		 * @param listener the listener
+		 * @param o the object containing the field
+		 * @param value the raw value
+		 * @throws BaseException if an error occurs
+		 */
+		private void decodePrimitive(ClassDefListener listener,Object o,long value) throws BaseException {
+			PrimitiveTypeCodec codec=primitiveTypeCodec;
+			Class<?> primitiveType=this.primitiveType;
+			if(primitiveType==int.class) {
+				access.setInt(listener,o,f,(int)codec.decodeLong(value));
+			} else if(primitiveType==long.class) {
+				access.setLong(listener,o,f,codec.decodeLong(value));
+			} else if(primitiveType==boolean.class) {
+				access.setBoolean(listener,o,f,codec.decodeLong(value)!=0);
+			} else if(primitiveType==double.class) {
+				access.setDouble(listener,o,f,codec.decodeDouble(value));
+			} else {
+				access.setFloat(listener,o,f,(float)codec.decodeDouble(value));
 			}
-			resolveCodec(scheme,type,access.getFieldAccess(f));
 		}
 		
 		public boolean encode(ProtobufEncoder encoder,ProtobufBuffer buffer,Object o) throws BaseException {
@@ -243,6 +395,11 @@ class ClassCodec extends AbstractCodec {
 		public void consume(ClassDefListener listener, int field,long value) throws BaseException {
 			if(primitiveTypeCodec!=null) {
 				listener.mark(offset);
+				Object o;
+				if(primitiveType!=null&&(o=listener.currentObject().getDirectAccessObject())!=null) {
+					decodePrimitive(listener,o,value);
+					return;
+				}
 				listener.currentObject().setField(listener,f, access.getFieldAccess(f).makeAccessible(listener,primitiveTypeCodec.decode(value)));
 			} else if(classCodec!=null) {
 				classCodec.consumeInternal(listener,field, f,value);
@@ -326,4 +483,19 @@ class ClassCodec extends AbstractCodec {
 			return defaultValue==null?null:access.getFieldAccess(access.getFields()[offset]).makeDefault(context,defaultValue);
 		}		
 	}
+	
+	/**
+	 * The fields of this codec skipped by a field selector (indexed by the offset of the field).
+	 */
+	private class Projection {
+		final FieldSelector selector;
+		final boolean[] skipped;
+		Projection(FieldSelector selector) {
+			this.selector=selector;
+			skipped=new boolean[fieldCodecs.length];
+			for(FieldCodec codec:fieldCodecs) {
+				skipped[codec.offset]=!selector.isSelected(access.getType(),codec.f);
+			}
+		}
+	}
 }
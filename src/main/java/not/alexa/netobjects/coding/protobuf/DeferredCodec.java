@@ -15,8 +15,6 @@
  */
 package not.alexa.netobjects.coding.protobuf;
 
-import java.util.Arrays;
-
 import not.alexa.netobjects.BaseException;
 import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.BufferWriter;
 import not.alexa.netobjects.coding.protobuf.ProtobufDecoder.ClassDefListener;
@@ -73,7 +71,13 @@ class DeferredCodec extends AbstractCodec {
 							if(content!=null) {
 								buffer.write(index, content);
 							} else {
-								scheme.getClassCodec(encoder.getContext(),type).encode(encoder,buffer,index,o);
+								// The message is kept undecoded and must not reference the type dictionary
+								encoder.beginSelfContained();
+								try {
+									scheme.getClassCodec(encoder.getContext(),type).encode(encoder,buffer,index,o);
+								} finally {
+									encoder.endSelfContained();
+								}
 							}
 							break;
 						default: throw new BaseException(BaseException.BAD_REQUEST,"Unsupported");
@@ -115,7 +119,7 @@ class DeferredCodec extends AbstractCodec {
 
 	@Override
 	public void consume(byte[] value, int offset, int len, ClassDefListener childListener) throws BaseException {
-		DeferredProtobufObject o=new DeferredProtobufObject(childListener.getCodingScheme(),childListener.getContext(), null,Arrays.copyOfRange(value, offset, offset+len));
+		DeferredProtobufObject o=new DeferredProtobufObject(childListener.getCodingScheme(),childListener.getContext(), null,childListener.share(value, offset, len));
 		childListener.o=access.makeAccessible(childListener,o);
 	}
 }
@@ -15,6 +15,10 @@
  */
 package not.alexa.netobjects.coding.protobuf;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
 import not.alexa.netobjects.BaseException;
 import not.alexa.netobjects.Castable;
 import not.alexa.netobjects.Context;
@@ -35,6 +39,10 @@ class DeferredProtobufObject extends DeferredObject implements BufferWriter {
 	ProtobufData content;
 	ProtobufCodingScheme scheme;
 	ObjectType type;
+	/**
+	 * The content may reference the type dictionary of the decoder (see {@link ProtobufCodingScheme.Builder#setTypeDictionary(boolean)}).
+	 */
+	boolean dictionaryReferences;
 	
 	public DeferredProtobufObject() {
 	}
@@ -49,7 +57,14 @@ class DeferredProtobufObject extends DeferredObject implements BufferWriter {
 		this.content=new ProtobufData(v);
 	}
 	
-	public DeferredProtobufObject(ProtobufCodingScheme scheme,Context context,ObjectType type,byte[] content) {
+	/**
+	 * 
+	 * @param scheme the coding scheme of the content
+	 * @param context the context of the object
+	 * @param type the type of the object (if known)
+	 * @param content the encoded object. The content is referenced (not copied) and must not change afterwards.
+	 */
+	public DeferredProtobufObject(ProtobufCodingScheme scheme,Context context,ObjectType type,ByteBuffer content) {
 		this.context=context;
 		this.type=type;
 		this.scheme=scheme;
@@ -61,7 +76,10 @@ class DeferredProtobufObject extends DeferredObject implements BufferWriter {
 		return get(context,clazz);
 	}
 	
-	public void write(ProtobufBuffer buffer,int index) {
+	public void write(ProtobufBuffer buffer,int index) throws BaseException {
+		if(dictionaryReferences) {
+			throw new BaseException(BaseException.BAD_REQUEST,"Message of unknown type "+type+" may reference the type dictionary of the decoder and cannot be copied");
+		}
 		content.write(index, buffer);
 	}
 
@@ -93,7 +111,8 @@ class DeferredProtobufObject extends DeferredObject implements BufferWriter {
 			TypeDefinition def=type!=null?context.resolveType(type):context.resolveType(clazz);
 			Class<?> typeClass=def.getJavaClassType()==null?null:def.getJavaClassType().asLinkedLocal(context.getTypeLoader().getClassLoader()).asClass();
 			if(typeClass!=null&&clazz.isAssignableFrom(typeClass)) {
-				t=scheme.newBuilder().setRootType(def).build().createDecoder(context, content.getOutputBuffer(clazz)).decode(clazz);
+				// The content is a single (not delimited) and self contained message
+				t=scheme.newBuilder().setRootType(def).setDelimited(false).setTypeDictionary(false).build().createDecoder(context, content.getOutputBuffer(scheme,clazz)).decode(clazz);
 			}
 			if(t!=null&&context==this.context) {
 				setObject(t);
@@ -109,27 +128,77 @@ class DeferredProtobufObject extends DeferredObject implements BufferWriter {
 		return content==null;
 	}
 
-	private class ProtobufData {
+	/**
+	 * Methods of proxies without context argument resolve the object in the context of the decoder. This implements
+	 * lazy decoding (see {@code protobuf:lazy} in {@link ProtobufCodingScheme}). Exceptions of the invoked method are
+	 * passed through. If decoding fails, the {@link BaseException} is thrown (wrapped into a runtime exception if the
+	 * method doesn't declare it).
+	 */
+	@Override
+	public Object handleUncallableMethod(Object proxy, Method method, Object[] args) throws Throwable {
+		Object o;
+		Context context=this.context;
+		if(!isResolved()&&context!=null) try {
+			o=get(context,method.getDeclaringClass());
+		} catch(BaseException e) {
+			for(Class<?> exceptionClass:method.getExceptionTypes()) {
+				if(exceptionClass.isInstance(e)) {
+					throw e;
+				}
+			}
+			return e.throwRuntimeException();
+		} else {
+			o=resolveObject(context,method);
+		}
+		if(o!=null) try {
+			return method.invoke(o, args);
+		} catch(InvocationTargetException e) {
+			throw e.getCause();
+		}
+		throw new RuntimeException("Uncallable: "+method);
+	}
+
+	/**
+	 * The content of a deferred object. Length delimited content is a copy of the decoded content or a slice of
+	 * a mapped file (which is copied only if the object is resolved).
+	 * 
+	 * @author notalexa
+	 */
+	static class ProtobufData {
 		long v;
-		byte[] b;
+		ByteBuffer b;
 		public ProtobufData(long v) {
 			this.v=v;
 		}
-		public ProtobufData(byte[] b) {
+		public ProtobufData(ByteBuffer b) {
 			this.b=b;
 		}
 		
-		private ProtobufBuffer getOutputBuffer(Class<?> clazz) {
+		private ProtobufBuffer getOutputBuffer(ProtobufCodingScheme scheme,Class<?> clazz) {
 			if(scheme!=null&&scheme.getPrimitiveTypeCodec(clazz)!=null) {
-				return (b!=null?new ProtobufBuffer().write(1, b):new ProtobufBuffer().write(1, v)).getOutputBuffer();
+				ProtobufBuffer buffer=new ProtobufBuffer();
+				write(1,buffer);
+				return buffer.getOutputBuffer();
+			} else if(b.hasArray()) {
+				return new ProtobufBuffer(b.array(),b.arrayOffset()+b.position(),b.remaining());
 			} else {
-				return new ProtobufBuffer(b);
+				return new ProtobufBuffer(getBytes());
 			}
 		}
 		
+		private byte[] getBytes() {
+			byte[] bytes=new byte[b.remaining()];
+			b.duplicate().get(bytes);
+			return bytes;
+		}
+		
 		void write(int index,ProtobufBuffer buffer) {
 			if(b!=null) {
-				buffer.write(index,b);
+				if(b.hasArray()) {
+					buffer.write(index,b.array(),b.arrayOffset()+b.position(),b.remaining());
+				} else {
+					buffer.write(index,getBytes());
+				}
 			} else {
 				buffer.write(index, v);
 			}
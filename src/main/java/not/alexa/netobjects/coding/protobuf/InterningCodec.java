@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2024 Not Alexa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package not.alexa.netobjects.coding.protobuf;
+
+import java.util.Arrays;
+
+import not.alexa.netobjects.BaseException;
+import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.PrimitiveTypeCodec;
+
+/**
+ * Codec interning decoded values of length delimited fields. The values are held in a bounded table
+ * indexed by the hash of the encoded bytes. A slot holds exactly one value which is replaced on collision.
+ * The table is used without synchronization: Entries are immutable, and a lost update only means a missed
+ * cache hit.
+ *
+ * @author notalexa
+ */
+class InterningCodec implements PrimitiveTypeCodec {
+	private final PrimitiveTypeCodec codec;
+	private final Entry[] entries;
+	private final int maxLength;
+
+	/**
+	 *
+	 * @param codec the underlying codec
+	 * @param capacity the capacity of the table (rounded up to a power of 2)
+	 * @param maxLength the maximum (encoded) length of values to intern
+	 */
+	InterningCodec(PrimitiveTypeCodec codec,int capacity,int maxLength) {
+		this.codec=codec;
+		this.entries=new Entry[Integer.highestOneBit(Math.max(1,capacity-1))<<1];
+		this.maxLength=maxLength;
+	}
+
+	@Override
+	public void encode(ProtobufBuffer buffer, int field, Object o) {
+		codec.encode(buffer, field, o);
+	}
+
+	@Override
+	public Object decode(long value) throws BaseException {
+		return codec.decode(value);
+	}
+
+	@Override
+	public Object decode(byte[] value, int offset, int len) throws BaseException {
+		if(len>maxLength) {
+			return codec.decode(value, offset, len);
+		}
+		int hash=1;
+		for(int i=offset;i<offset+len;i++) {
+			hash=31*hash+value[i];
+		}
+		int index=(hash^(hash>>>16))&(entries.length-1);
+		Entry entry=entries[index];
+		if(entry!=null&&entry.hash==hash&&entry.matches(value, offset, len)) {
+			return entry.value;
+		}
+		Object o=codec.decode(value, offset, len);
+		entries[index]=new Entry(hash,Arrays.copyOfRange(value, offset, offset+len),o);
+		return o;
+	}
+
+	private static class Entry {
+		private final int hash;
+		private final byte[] key;
+		private final Object value;
+		private Entry(int hash,byte[] key,Object value) {
+			this.hash=hash;
+			this.key=key;
+			this.value=value;
+		}
+
+		private boolean matches(byte[] value,int offset,int len) {
+			if(key.length!=len) {
+				return false;
+			}
+			for(int i=0;i<len;i++) {
+				if(key[i]!=value[offset+i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -15,47 +15,324 @@
  */
 package not.alexa.netobjects.coding.protobuf;
 
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.Collection;
+
 import not.alexa.netobjects.BaseException;
+import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.CodecType;
+import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.PrimitiveTypeCodec;
 import not.alexa.netobjects.coding.protobuf.ProtobufDecoder.ClassDefListener;
 import not.alexa.netobjects.types.AccessibleObject;
 import not.alexa.netobjects.types.ClassTypeDefinition.Field;
 import not.alexa.netobjects.types.access.Access;
+import not.alexa.netobjects.types.access.ArrayTypeAccess;
+import not.alexa.netobjects.types.access.ArrayTypeAccess.Presizable;
+import not.alexa.netobjects.types.access.ArrayTypeAccess.PrimitiveAccessibleArray;
 
 /**
- * Codec for arrays implementing the packed strategy. This codec is currently not used.
- * 
+ * Codec for arrays of scalar numeric types implementing the packed strategy: All elements are
+ * written without tags into one length delimited field. For decoding, the codec accepts the
+ * packed and the unpacked (one tag per element) representation.
+ *
  * @author notalexa
  */
 class PackedArrayCodec extends AbstractCodec {
+	private static final int[] ARRAY_MASK={ 0 };
+	private int offset;
+	private Access componentAccess;
+	private PrimitiveTypeCodec codec;
+	private Packing packing;
+	/**
+	 * The primitive type decoded by the codec without boxing (see {@link PrimitiveTypeCodec#getPrimitiveType()}).
+	 */
+	private Class<?> primitiveType;
+
+	PackedArrayCodec(int offset,Access fieldAccess,Access componentAccess,PrimitiveTypeCodec codec,Packing packing) {
+		super(fieldAccess);
+		this.offset=offset;
+		this.componentAccess=componentAccess;
+		this.codec=codec;
+		this.packing=packing;
+		primitiveType=codec.getPrimitiveType();
+	}
+
+	@Override
+	public boolean isArrayCodec() {
+		return true;
+	}
 
-	PackedArrayCodec(Access classAccess,Access fieldAccess) {
-		super(classAccess);
+	public int[] getMask() {
+		return ARRAY_MASK;
+	}
+
+	@Override
+	public ClassDefListener createListener(ClassDefListener parent) throws BaseException {
+		AccessibleObject array=parent.getArray(offset,this);
+		return parent.createChild(array, this);
 	}
 
 	@Override
 	public void encode(ProtobufEncoder encoder, ProtobufBuffer buffer, Object o) throws BaseException {
+		throw new BaseException(BaseException.BAD_REQUEST,"Packed array (field #"+offset+" of "+componentAccess.getType()+") cannot be encoded without a field");
 	}
 
 	@Override
-	public void consume(ClassDefListener listener, int field, long value) throws BaseException {
+	public void encode(ProtobufEncoder encoder, ProtobufBuffer buffer, int index, Object o) throws BaseException {
+		if(o.getClass().isArray()) {
+			if(Array.getLength(o)>0) {
+				buffer.push(index);
+				if(o instanceof int[]) {
+					for(int v:(int[])o) {
+						packing.write(buffer,v);
+					}
+				} else if(o instanceof long[]) {
+					for(long v:(long[])o) {
+						packing.write(buffer,v);
+					}
+				} else if(o instanceof double[]) {
+					for(double v:(double[])o) {
+						packing.write(buffer,Double.doubleToLongBits(v));
+					}
+				} else if(o instanceof float[]) {
+					for(float v:(float[])o) {
+						packing.write(buffer,Float.floatToIntBits(v));
+					}
+				} else if(o instanceof short[]) {
+					for(short v:(short[])o) {
+						packing.write(buffer,v);
+					}
+				} else if(o instanceof char[]) {
+					for(char v:(char[])o) {
+						packing.write(buffer,v);
+					}
+				} else if(o instanceof boolean[]) {
+					for(boolean v:(boolean[])o) {
+						packing.write(buffer,v?1:0);
+					}
+				} else {
+					encode(buffer,ArrayTypeAccess.canonicalize(o));
+				}
+				buffer.pop();
+			}
+		} else {
+			Collection<?> col=ArrayTypeAccess.canonicalize(o);
+			if(!col.isEmpty()) {
+				buffer.push(index);
+				encode(buffer,col);
+				buffer.pop();
+			}
+		}
+	}
+
+	private void encode(ProtobufBuffer buffer,Collection<?> col) {
+		for(Object item:col) {
+			if(item!=null) {
+				packing.write(buffer,toBits(item));
+			}
+		}
+	}
+
+	private static long toBits(Object o) {
+		if(o instanceof Double) {
+			return Double.doubleToLongBits((Double)o);
+		} else if(o instanceof Float) {
+			return Float.floatToIntBits((Float)o);
+		} else if(o instanceof Boolean) {
+			return ((Boolean)o)?1:0;
+		} else if(o instanceof Character) {
+			return (Character)o;
+		} else {
+			return ((Number)o).longValue();
+		}
+	}
+
+	protected AccessibleObject getArray(ClassDefListener listener) throws BaseException {
+		return listener.getArray(offset,this);
+	}
+
+	/**
+	 * 
+	 * @param array the array to add elements to
+	 * @return the array if elements can be added without boxing, {@code null} otherwise
+	 */
+	private PrimitiveAccessibleArray asPrimitive(AccessibleObject array) {
+		return primitiveType!=null&&array instanceof PrimitiveAccessibleArray?(PrimitiveAccessibleArray)array:null;
+	}
+
+	private void add(PrimitiveAccessibleArray array,long value) throws BaseException {
+		if(primitiveType==double.class||primitiveType==float.class) {
+			array.addDouble(codec.decodeDouble(value));
+		} else {
+			array.addLong(codec.decodeLong(value));
+		}
 	}
 
 	@Override
-	public void consume(ClassDefListener listener, int field, byte[] value, int offset, int len) throws BaseException {
+	public void consume(ClassDefListener listener, int field, long value) throws BaseException {
+		AccessibleObject array=getArray(listener);
+		PrimitiveAccessibleArray primitiveArray=asPrimitive(array);
+		if(primitiveArray!=null) {
+			add(primitiveArray,value);
+		} else {
+			array.add(componentAccess.makeAccessible(listener,codec.decode(value)));
+		}
 	}
+
 	@Override
 	public void consumeInternal(ClassDefListener listener,int field, Field f,long value) throws BaseException {
+		consume(listener,field,value);
 	}
+
 	@Override
-	public void consume(ClassDefListener listener, int offset,AccessibleObject o) throws BaseException {
+	public void consume(ClassDefListener listener, int field, byte[] value, int offset, int len) throws BaseException {
+		consume(getArray(listener),listener,value,offset,len);
 	}
 
 	@Override
-	public boolean isArrayCodec() {
-		return true;
+	public void consume(byte[] value, int offset, int len, ClassDefListener childListener) throws BaseException {
+		consume(childListener.currentObject(),childListener,value,offset,len);
 	}
 
-	public int[] getMask() {
-		return null;
+	private void consume(AccessibleObject array,ClassDefListener listener,byte[] value, int offset, int len) throws BaseException {
+		ProtobufBuffer buffer=new ProtobufBuffer(value,offset,len);
+		PrimitiveAccessibleArray primitiveArray=asPrimitive(array);
+		if(array instanceof Presizable) {
+			((Presizable)array).expect(packing.count(value,offset,len));
+		}
+		try {
+			if(primitiveArray!=null) {
+				while(buffer.hasRemaining()) {
+					add(primitiveArray,packing.read(buffer));
+				}
+			} else while(buffer.hasRemaining()) {
+				array.add(componentAccess.makeAccessible(listener,codec.decode(packing.read(buffer))));
+			}
+		} catch(IOException|IndexOutOfBoundsException e) {
+			throw new BaseException(BaseException.BAD_REQUEST,"Illegal packed encoding");
+		}
+	}
+
+	@Override
+	public void consume(ClassDefListener listener, int field,AccessibleObject o) throws BaseException {
+		getArray(listener).add(o);
+	}
+
+	/**
+	 * The wire representation of the elements of a packed array.
+	 *
+	 * @author notalexa
+	 */
+	enum Packing {
+		Varint {
+			@Override
+			void write(ProtobufBuffer buffer, long bits) {
+				buffer.writeVarint(bits);
+			}
+		},
+		ZigZag {
+			@Override
+			void write(ProtobufBuffer buffer, long bits) {
+				buffer.writeVarint(ProtobufBuffer.zigZag(bits));
+			}
+		},
+		Fixed32 {
+			@Override
+			void write(ProtobufBuffer buffer, long bits) {
+				buffer.writeFixed32((int)bits);
+			}
+
+			@Override
+			long read(ProtobufBuffer buffer) throws IOException {
+				buffer.require(4);
+				return buffer.readFixed32();
+			}
+
+			@Override
+			int count(byte[] value,int offset,int len) {
+				return len>>2;
+			}
+		},
+		Fixed64 {
+			@Override
+			void write(ProtobufBuffer buffer, long bits) {
+				buffer.writeFixed64(bits);
+			}
+
+			@Override
+			long read(ProtobufBuffer buffer) throws IOException {
+				buffer.require(8);
+				return buffer.readFixed64();
+			}
+
+			@Override
+			int count(byte[] value,int offset,int len) {
+				return len>>3;
+			}
+		};
+
+		abstract void write(ProtobufBuffer buffer,long bits);
+
+		/**
+		 * Read the raw value of an element. The value is decoded afterwards using the primitive type codec
+		 * of the component (which handles zig zag encoding, conversion to floating point numbers etc.).
+		 *
+		 * @param buffer the buffer to read from
+		 * @return the raw value of the next element
+		 * @throws IOException if the buffer is exhausted
+		 */
+		long read(ProtobufBuffer buffer) throws IOException {
+			return buffer.readLong();
+		}
+
+		/**
+		 * Count the elements of a packed encoding. Since every varint ends with a byte without the continuation
+		 * bit, the number of these bytes is the number of elements.
+		 *
+		 * @param value the buffer
+		 * @param offset the offset of the packed encoding
+		 * @param len the length of the packed encoding
+		 * @return the number of elements in the packed encoding
+		 */
+		int count(byte[] value,int offset,int len) {
+			int count=0;
+			for(int i=offset;i<offset+len;i++) {
+				if(value[i]>=0) {
+					count++;
+				}
+			}
+			return count;
+		}
+
+		/**
+		 *
+		 * @param type the codec type of the array
+		 * @param clazz the component class
+		 * @return the packing of the component class or {@code null} if arrays of this class cannot be packed
+		 */
+		static Packing get(CodecType type,Class<?> clazz) {
+			if(clazz==Double.TYPE||clazz==Double.class) {
+				return Fixed64;
+			} else if(clazz==Float.TYPE||clazz==Float.class) {
+				return Fixed32;
+			} else if(clazz==Boolean.TYPE||clazz==Boolean.class||clazz==Character.TYPE||clazz==Character.class) {
+				return Varint;
+			} else if(clazz==Long.TYPE||clazz==Long.class) {
+				switch(type) {
+					case Fixed:return Fixed64;
+					case Signed:return ZigZag;
+					default:return Varint;
+				}
+			} else if(clazz==Integer.TYPE||clazz==Integer.class
+					||clazz==Short.TYPE||clazz==Short.class
+					||clazz==Byte.TYPE||clazz==Byte.class) {
+				switch(type) {
+					case Fixed:return Fixed32;
+					case Signed:return ZigZag;
+					default:return Varint;
+				}
+			}
+			return null;
+		}
 	}
 }
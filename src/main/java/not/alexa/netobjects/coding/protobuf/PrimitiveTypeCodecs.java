@@ -17,7 +17,6 @@ package not.alexa.netobjects.coding.protobuf;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.util.Arrays;
@@ -38,7 +37,6 @@ import not.alexa.netobjects.types.ObjectType;
  * @author notalexa
  */
 class PrimitiveTypeCodecs {
-	private static final Charset UTF8=Charset.forName("UTF-8");
 
 	private PrimitiveTypeCodecs() {
 	}
@@ -53,6 +51,21 @@ class PrimitiveTypeCodecs {
 		public Object decode(long value) {
 			return value==0?Boolean.FALSE:Boolean.TRUE;
 		}
+
+		@Override
+		public Class<?> getPrimitiveType() {
+			return boolean.class;
+		}
+
+		@Override
+		public void encodeLong(ProtobufBuffer buffer, int field, long v) {
+			buffer.write(field, v==0?0:1);
+		}
+
+		@Override
+		public long decodeLong(long value) {
+			return value==0?0:1;
+		}
 	};
 	
 	static PrimitiveTypeCodec BYTE_CODEC=new PrimitiveTypeCodec() {
@@ -88,6 +101,21 @@ class PrimitiveTypeCodecs {
 		public Object decode(long value) {
 			return (int)value;
 		}
+
+		@Override
+		public Class<?> getPrimitiveType() {
+			return int.class;
+		}
+
+		@Override
+		public void encodeLong(ProtobufBuffer buffer, int field, long v) {
+			buffer.write(field, (int)v);
+		}
+
+		@Override
+		public long decodeLong(long value) {
+			return (int)value;
+		}
 	};
 	
 	static PrimitiveTypeCodec LONG_CODEC=new PrimitiveTypeCodec() {
@@ -100,6 +128,21 @@ class PrimitiveTypeCodecs {
 		public Object decode(long value) {
 			return (long)value;
 		}
+
+		@Override
+		public Class<?> getPrimitiveType() {
+			return long.class;
+		}
+
+		@Override
+		public void encodeLong(ProtobufBuffer buffer, int field, long v) {
+			buffer.write(field, v);
+		}
+
+		@Override
+		public long decodeLong(long value) {
+			return value;
+		}
 	};
 
 	static PrimitiveTypeCodec ZIG_ZAG_BYTE_CODEC=new PrimitiveTypeCodec() {
@@ -136,6 +179,21 @@ class PrimitiveTypeCodecs {
 		public Object decode(long value) {
 			return (int)ProtobufBuffer.gazGiz(value);
 		}
+
+		@Override
+		public Class<?> getPrimitiveType() {
+			return int.class;
+		}
+
+		@Override
+		public void encodeLong(ProtobufBuffer buffer, int field, long v) {
+			buffer.writeZigZag(field, (int)v);
+		}
+
+		@Override
+		public long decodeLong(long value) {
+			return (int)ProtobufBuffer.gazGiz(value);
+		}
 	};
 	
 	static PrimitiveTypeCodec ZIG_ZAG_LONG_CODEC=new PrimitiveTypeCodec() {
@@ -148,6 +206,21 @@ class PrimitiveTypeCodecs {
 		public Object decode(long value) {
 			return (long)ProtobufBuffer.gazGiz(value);
 		}
+
+		@Override
+		public Class<?> getPrimitiveType() {
+			return long.class;
+		}
+
+		@Override
+		public void encodeLong(ProtobufBuffer buffer, int field, long v) {
+			buffer.writeZigZag(field, v);
+		}
+
+		@Override
+		public long decodeLong(long value) {
+			return ProtobufBuffer.gazGiz(value);
+		}
 	};
 
 	static PrimitiveTypeCodec FIXED_BYTE_CODEC=new PrimitiveTypeCodec() {
@@ -184,6 +257,21 @@ class PrimitiveTypeCodecs {
 		public Object decode(long value) {
 			return (int)value;
 		}
+
+		@Override
+		public Class<?> getPrimitiveType() {
+			return int.class;
+		}
+
+		@Override
+		public void encodeLong(ProtobufBuffer buffer, int field, long v) {
+			buffer.writeFixedInt(field, (int)v);
+		}
+
+		@Override
+		public long decodeLong(long value) {
+			return (int)value;
+		}
 	};
 	
 	static PrimitiveTypeCodec FIXED_LONG_CODEC=new PrimitiveTypeCodec() {
@@ -196,6 +284,21 @@ class PrimitiveTypeCodecs {
 		public Object decode(long value) {
 			return (long)value;
 		}
+
+		@Override
+		public Class<?> getPrimitiveType() {
+			return long.class;
+		}
+
+		@Override
+		public void encodeLong(ProtobufBuffer buffer, int field, long v) {
+			buffer.writeFixedLong(field, v);
+		}
+
+		@Override
+		public long decodeLong(long value) {
+			return value;
+		}
 	};
 
 	static PrimitiveTypeCodec STRING_CODEC=new PrimitiveTypeCodec() {
@@ -206,7 +309,7 @@ class PrimitiveTypeCodecs {
 
 		@Override
 		public Object decode(byte[] value, int offset, int len) {
-			return new String(value,offset,len,UTF8);
+			return ProtobufBuffer.readString(value,offset,len);
 		}
 	};
 	
@@ -230,7 +333,7 @@ class PrimitiveTypeCodecs {
 
 		@Override
 		public Object decode(byte[] value, int offset, int len) {
-			return ObjectType.resolve(new String(value,offset,len,UTF8));
+			return ObjectType.resolve(ProtobufBuffer.readString(value,offset,len));
 		}
 	};
 	
@@ -242,7 +345,7 @@ class PrimitiveTypeCodecs {
 
 		@Override
 		public Object decode(byte[] value, int offset, int len) {
-			return UUID.fromString(new String(value,offset,len,UTF8));
+			return UUID.fromString(ProtobufBuffer.readString(value,offset,len));
 		}
 	};
 
@@ -254,7 +357,7 @@ class PrimitiveTypeCodecs {
 
 		@Override
 		public Object decode(byte[] value, int offset, int len) {
-			return new BigInteger(new String(value,offset,len,UTF8));
+			return new BigInteger(ProtobufBuffer.readString(value,offset,len));
 		}
 	};
 
@@ -266,7 +369,7 @@ class PrimitiveTypeCodecs {
 
 		@Override
 		public Object decode(byte[] value, int offset, int len) {
-			return new BigDecimal(new String(value,offset,len,UTF8));
+			return new BigDecimal(ProtobufBuffer.readString(value,offset,len));
 		}
 	};
 	
@@ -286,7 +389,7 @@ class PrimitiveTypeCodecs {
 		public Object decode(byte[] value, int offset, int len) throws BaseException {
 			try {
 				synchronized (format) {
-					return format.parse(new String(value,offset,len,UTF8));
+					return format.parse(ProtobufBuffer.readString(value,offset,len));
 				}
 			} catch(ParseException e) {
 				return BaseException.throwException(e);
@@ -316,6 +419,21 @@ class PrimitiveTypeCodecs {
 		public Object decode(long value) {
 			return Float.intBitsToFloat((int)value);
 		}
+
+		@Override
+		public Class<?> getPrimitiveType() {
+			return float.class;
+		}
+
+		@Override
+		public void encodeDouble(ProtobufBuffer buffer, int field, double v) {
+			buffer.writeFixedInt(field,Float.floatToIntBits((float)v));
+		}
+
+		@Override
+		public double decodeDouble(long value) {
+			return Float.intBitsToFloat((int)value);
+		}
 	};
 
 	static PrimitiveTypeCodec DOUBLE_CODEC=new PrimitiveTypeCodec() {
@@ -328,5 +446,20 @@ class PrimitiveTypeCodecs {
 		public Object decode(long value) {
 			return Double.longBitsToDouble(value);
 		}
+
+		@Override
+		public Class<?> getPrimitiveType() {
+			return double.class;
+		}
+
+		@Override
+		public void encodeDouble(ProtobufBuffer buffer, int field, double v) {
+			buffer.writeFixedLong(field,Double.doubleToLongBits(v));
+		}
+
+		@Override
+		public double decodeDouble(long value) {
+			return Double.longBitsToDouble(value);
+		}
 	};
 }
@@ -18,6 +18,8 @@ package not.alexa.netobjects.coding.protobuf;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 
@@ -28,6 +30,14 @@ import java.util.Arrays;
  */
 class ProtobufBuffer {
 	private static Charset UTF8=Charset.forName("UTF-8");
+	private static final int MAX_SPARE_CHUNKS=16;
+	/**
+	 * Chunks larger than this size are not kept for reuse. Buffers returned to the pool retain at most
+	 * {@value #MAX_SPARE_CHUNKS} chunks of this size.
+	 */
+	private static final int MAX_SPARE_CHUNK_SIZE=64*1024;
+	private static final int MAX_SPARE_MARKS=4096;
+	private static final ThreadLocal<ProtobufBuffer> POOL=new ThreadLocal<>();
 	private Entry currentEntry;
 	private Entry buffered;
 	private byte[] currentBuffer;
@@ -37,6 +47,50 @@ class ProtobufBuffer {
 	private byte[][] bufferBytes;
 	private int used=-1;
 	private int tagLength;
+	private byte[][] spareChunks;
+	private int spareCount;
+	private int chunkBase;
+	private boolean twoPass;
+	private int[] markPositions;
+	private int[] markLengths;
+	private int markCount;
+
+	/**
+	 * Lease a buffer for encoding. The buffer is taken from a (thread local) pool if available and should be
+	 * {@link #release() released} after usage.
+	 * 
+	 * @param twoPass {@code true} if the buffer should use two pass encoding
+	 * @return an empty buffer for encoding
+	 * @see #setTwoPass(boolean)
+	 */
+	public static ProtobufBuffer lease(boolean twoPass) {
+		ProtobufBuffer buffer=POOL.get();
+		if(buffer!=null) {
+			POOL.set(null);
+		} else {
+			buffer=new ProtobufBuffer();
+		}
+		return buffer.setTwoPass(twoPass);
+	}
+	
+	/**
+	 * Switch between one pass and two pass encoding. In one pass encoding, one byte is reserved for the length of
+	 * a pushed field and the content is shifted if the length needs more bytes. In two pass encoding, no length
+	 * is reserved. Instead, the position of the length is recorded and the length is inserted while writing the
+	 * content of this buffer (which is the second pass). This avoids shifting of the content completely. 
+	 * The mode can only be changed if the buffer is empty.
+	 * 
+	 * @param twoPass {@code true} if two pass encoding should be used
+	 * @return this buffer
+	 */
+	public ProtobufBuffer setTwoPass(boolean twoPass) {
+		if(twoPass&&markPositions==null) {
+			markPositions=new int[32];
+			markLengths=new int[32];
+		}
+		this.twoPass=twoPass;
+		return this;
+	}
 
 	public ProtobufBuffer() {
 		this(new byte[2048]);
@@ -62,15 +116,21 @@ class ProtobufBuffer {
 				switch(tag&0x7) {
 				case 0: listener.consume(tag>>3, readLong());
 					break;
-				case 1: listener.consume(tag>>3, readFixed64());
+				case 1: require(8);
+					listener.consumeFixed64(tag>>3, readFixed64());
 					break;
-				case 5: listener.consume(tag>>3, readFixed32());
+				case 5: require(4);
+					listener.consume(tag>>3, readFixed32());
 					break;
 				case 2: int len=readInt();
+					if(len<0) {
+						throw new IOException("Illegal length "+len);
+					}
+					require(len);
 					listener.consume(tag>>3, currentBuffer, offset,len);
 					offset+=len;
 					break;
-				default: throw new RuntimeException();
+				default: throw new IOException("Illegal wire type "+(tag&0x7));
 				}
 			}
 			listener.done();
@@ -80,6 +140,17 @@ class ProtobufBuffer {
 		return listener;
 	}
 	
+	/**
+	 * 
+	 * @param n the number of requested bytes
+	 * @throws EOFException if less than <code>n</code> bytes are remaining
+	 */
+	void require(int n) throws EOFException {
+		if(len-offset<n) {
+			throw new EOFException();
+		}
+	}
+
 	public int readFixed32() {
 		int ret=((currentBuffer[offset+3]&0xff)<<24)
 				|((currentBuffer[offset+2]&0xff)<<16)
@@ -103,36 +174,69 @@ class ProtobufBuffer {
 		return ret;
 	}
 
+	/**
+	 * Read a variable length integer truncated to 32 bits (negative integers are encoded using 10 bytes).
+	 * 
+	 * @return the next integer
+	 * @throws IOException if the buffer is exhausted or the varint is malformed
+	 */
 	public int readInt() throws IOException {
-		int accu=0;
-		int shift=0;
-		while(offset<currentBuffer.length) {
-			byte b=currentBuffer[offset++];
-			accu|=((b&0x7f)<<shift);
+		if(offset<len) {
+			// Tags and lengths typically fit into one byte
+			byte b=currentBuffer[offset];
 			if(b>=0) {
-				return accu;
+				offset++;
+				return b;
 			}
-			shift+=7;
 		}
-		throw new EOFException();
+		return (int)readLong();
 	}
 	
+	/**
+	 * Read a length delimited message (a varint length prefix followed by the message).
+	 * The returned buffer shares the content with this buffer.
+	 * 
+	 * @return a buffer containing the next message
+	 * @throws IOException if the buffer doesn't contain a complete message
+	 */
+	public ProtobufBuffer readDelimited() throws IOException {
+		if(offset>=len) {
+			throw new EOFException();
+		}
+		int l=readInt();
+		if(l<0||offset+l>len) {
+			throw new EOFException();
+		}
+		ProtobufBuffer message=new ProtobufBuffer(currentBuffer,offset,l);
+		offset+=l;
+		return message;
+	}
+
+	/**
+	 * 
+	 * @return {@code true} if the buffer has unread content
+	 */
+	public boolean hasRemaining() {
+		return offset<len;
+	}
+
 	public void ensureLength(int len) {
 		if(currentBuffer.length<offset+len) {
 			if(offset<2048) {
 				currentBuffer=Arrays.copyOf(currentBuffer, len+2048);
 				return;
 			}
-			if(used<0) {
+			if(bufferBytes==null) {
 				bufferLength=new int[50];
 				bufferBytes=new byte[50][];
-			} else if(used==bufferLength.length) {
+			} else if(used+1==bufferLength.length) {
 				bufferLength=Arrays.copyOf(bufferLength, bufferLength.length+50);
 				bufferBytes=Arrays.copyOf(bufferBytes, bufferBytes.length+50);
 			}
 			used++;
 			bufferBytes[used]=currentBuffer;
 			bufferLength[used]=offset;
+			chunkBase+=offset;
 			Entry rover=currentEntry;
 			while(rover!=null) {
 				if(rover.index<0) {
@@ -142,11 +246,31 @@ class ProtobufBuffer {
 					rover=null;
 				}
 			}
-			currentBuffer=new byte[Math.max(8192, len+256)];
+			currentBuffer=newChunk(Math.max(8192, len+256));
 			offset=0;
 		}
 	}
 	
+	private byte[] newChunk(int size) {
+		while(spareCount>0) {
+			byte[] chunk=spareChunks[--spareCount];
+			spareChunks[spareCount]=null;
+			if(chunk.length>=size) {
+				return chunk;
+			}
+		}
+		return new byte[size];
+	}
+	
+	private void spare(byte[] chunk) {
+		if(spareChunks==null) {
+			spareChunks=new byte[MAX_SPARE_CHUNKS][];
+		}
+		if(spareCount<MAX_SPARE_CHUNKS&&chunk.length<=MAX_SPARE_CHUNK_SIZE) {
+			spareChunks[spareCount++]=chunk;
+		}
+	}
+	
 	private int writeLong(byte[] currentBuffer,int offset,long l) {
 		if(l<0) {
 			currentBuffer[offset+9]=(byte)(0x00|((l>>(63)&0x1)));
@@ -204,16 +328,155 @@ class ProtobufBuffer {
 	}
 	
 	public <T extends OutputStream> T writeTo(T out) throws IOException {
-		if(used>=0) for(int i=0;i<=used;i++){
-			out.write(bufferBytes[i],0,bufferLength[i]);
+		if(markCount>0) {
+			transfer(out::write);
+		} else {
+			if(used>=0) for(int i=0;i<=used;i++){
+				out.write(bufferBytes[i],0,bufferLength[i]);
+			}
+			out.write(currentBuffer,0,offset);
+		}
+		reset();
+		return out;
+	}
+	
+	/**
+	 * Second pass of two pass encoding: Write the content and insert the recorded lengths.
+	 * 
+	 * @param sink the sink to write to
+	 * @throws IOException if writing fails
+	 */
+	private void transfer(Sink sink) throws IOException {
+		byte[] prefix=new byte[5];
+		int mark=0;
+		int position=0;
+		for(int i=0;i<=used+1;i++) {
+			byte[] chunk=i<=used?bufferBytes[i]:currentBuffer;
+			int len=i<=used?bufferLength[i]:offset;
+			int start=0;
+			while(mark<markCount&&markPositions[mark]<=position+len) {
+				int end=markPositions[mark]-position;
+				sink.write(chunk,start,end-start);
+				sink.write(prefix,0,writeInt(prefix,0,markLengths[mark++]));
+				start=end;
+			}
+			sink.write(chunk,start,len-start);
+			position+=len;
+		}
+	}
+	
+	/**
+	 * Write the content of this buffer into the byte buffer.
+	 * 
+	 * @param out the byte buffer to write to
+	 * @return the byte buffer
+	 * @throws BufferOverflowException if the remaining space of the byte buffer is too small. The content of
+	 * this buffer is discarded in this case.
+	 */
+	public ByteBuffer writeTo(ByteBuffer out) {
+		if(out.remaining()<tagLength) {
+			reset();
+			throw new BufferOverflowException();
+		}
+		if(markCount>0) try {
+			transfer(out::put);
+		} catch(IOException e) {
+			// Cannot happen
+		} else {
+			if(used>=0) for(int i=0;i<=used;i++){
+				out.put(bufferBytes[i],0,bufferLength[i]);
+			}
+			out.put(currentBuffer,0,offset);
 		}
-		out.write(currentBuffer,0,offset);
-		offset=tagLength=0;
-		used=-1;
-		bufferBytes=null;
+		reset();
 		return out;
 	}
 	
+	/**
+	 * Discard the content of this buffer (including pushed fields). Allocated chunks are kept for reuse.
+	 */
+	public void reset() {
+		while(currentEntry!=null) {
+			Entry released=currentEntry;
+			currentEntry=currentEntry.prev;
+			released.prev=buffered;
+			buffered=released;
+		}
+		if(used>=0) {
+			spare(currentBuffer);
+			currentBuffer=bufferBytes[0];
+			for(int i=1;i<=used;i++) {
+				spare(bufferBytes[i]);
+			}
+			Arrays.fill(bufferBytes,0,used+1,null);
+			used=-1;
+		}
+		offset=tagLength=chunkBase=markCount=0;
+	}
+	
+	/**
+	 * Reset this buffer and return it to the pool of the current thread. The buffer must not be used afterwards.
+	 * Memory allocated for large messages is dropped to bound the memory retained per thread.
+	 * 
+	 * @see #lease(boolean)
+	 */
+	public void release() {
+		reset();
+		if(currentBuffer.length>MAX_SPARE_CHUNK_SIZE) {
+			currentBuffer=newChunk(2048);
+		}
+		if(markPositions!=null&&markPositions.length>MAX_SPARE_MARKS) {
+			markPositions=markLengths=null;
+		}
+		POOL.set(this);
+	}
+	
+	/**
+	 * 
+	 * @return the number of bytes written into this buffer. The method can only be called if no field is pushed.
+	 */
+	public int size() {
+		return tagLength;
+	}
+	
+	/**
+	 * Write the content of this buffer prefixed by its length as varint. Written messages can be read with {@link #readDelimited()}.
+	 * The method can only be called if no field is pushed.
+	 * 
+	 * @param <T> the type of the output stream
+	 * @param out the stream to write to
+	 * @return the stream
+	 * @throws IOException if writing fails
+	 */
+	public <T extends OutputStream> T writeDelimitedTo(T out) throws IOException {
+		byte[] prefix=new byte[10];
+		out.write(prefix,0,writeInt(prefix,0,tagLength));
+		return writeTo(out);
+	}
+
+	/**
+	 * Write the content of this buffer prefixed by its length as varint into the byte buffer.
+	 * 
+	 * @param out the byte buffer to write to
+	 * @return the byte buffer
+	 * @throws BufferOverflowException if the remaining space of the byte buffer is too small. The content of
+	 * this buffer is discarded in this case.
+	 * @see #writeDelimitedTo(OutputStream)
+	 */
+	public ByteBuffer writeDelimitedTo(ByteBuffer out) {
+		if(out.remaining()<tagLength+encodingLength(tagLength)) {
+			reset();
+			throw new BufferOverflowException();
+		}
+		int l=tagLength;
+		while(l>=0x80) {
+			out.put((byte)(0x80|(l&0x7f)));
+			l>>>=7;
+		}
+		out.put((byte)l);
+		return writeTo(out);
+	}
+	
 	public void close() {
 		if(offset<currentBuffer.length) {
 			currentBuffer=Arrays.copyOf(currentBuffer, offset);
@@ -236,15 +499,29 @@ class ProtobufBuffer {
 		} else {
 			currentEntry=new Entry(currentEntry,offset);
 		}
-		currentEntry.index=-1;
-		currentEntry.reserved=1;
 		currentEntry.len=tagLength;
 		tagLength=0;
-		// Minimum of 1 byte
-		offset++;
+		if(twoPass) {
+			// Remember the position of the length. The offset of the entry is the index of the mark.
+			if(markCount==markPositions.length) {
+				markPositions=Arrays.copyOf(markPositions, 2*markCount);
+				markLengths=Arrays.copyOf(markLengths, 2*markCount);
+			}
+			markPositions[markCount]=position();
+			currentEntry.offset=markCount++;
+		} else {
+			currentEntry.index=-1;
+			currentEntry.reserved=1;
+			// Minimum of 1 byte
+			offset++;
+		}
 		return this;
 	}
 	
+	private int position() {
+		return chunkBase+offset;
+	}
+	
 	int encodingLength(int i) {
 		if(i<128) {
 			return 1;
@@ -264,7 +541,16 @@ class ProtobufBuffer {
 	}
 	
 	public ProtobufBuffer pop() {
-		if(currentEntry!=null) {
+		if(twoPass) {
+			if(currentEntry!=null) {
+				markLengths[currentEntry.offset]=tagLength;
+				tagLength+=encodingLength(tagLength)+currentEntry.len;
+				Entry released=currentEntry;
+				currentEntry=currentEntry.prev;
+				released.prev=buffered;
+				buffered=released;
+			}
+		} else if(currentEntry!=null) {
 			int popOffset=currentEntry.index>=0?bufferLength[currentEntry.index]:offset;
 			byte[] popBuffer=currentEntry.index>=0?bufferBytes[currentEntry.index]:currentBuffer;
 			if(tagLength<128) {
@@ -321,13 +607,13 @@ class ProtobufBuffer {
 		return gazGiz(readLong());
 	}
 
+	public static long zigZag(long l) {
+		return (l<<1)^(l>>63);
+	}
+
 	public ProtobufBuffer writeZigZag(int field,long l) {
 		ensureLength(20);
-		if(l<0) {
-			l=(-l<<1)-1;
-		} else {
-			l=l<<1;
-		}
+		l=zigZag(l);
 		byte[] buffer=currentBuffer;
 		int c=offset;
 		offset=writeInt(buffer,offset,(field<<3));
@@ -368,6 +654,60 @@ class ProtobufBuffer {
 		return this;
 	}
 
+	/**
+	 * Write a variable length integer without tag. Used for packed arrays.
+	 * 
+	 * @param l the value to write
+	 * @return this buffer
+	 */
+	public ProtobufBuffer writeVarint(long l) {
+		ensureLength(10);
+		int c=offset;
+		offset=writeLong(currentBuffer,offset,l);
+		tagLength+=offset-c;
+		return this;
+	}
+
+	/**
+	 * Write a fixed 32 bit integer without tag. Used for packed arrays.
+	 * 
+	 * @param i the value to write
+	 * @return this buffer
+	 */
+	public ProtobufBuffer writeFixed32(int i) {
+		ensureLength(4);
+		byte[] buffer=currentBuffer;
+		buffer[offset]=(byte)(0xff&(i>>0));
+		buffer[offset+1]=(byte)(0xff&(i>>8));
+		buffer[offset+2]=(byte)(0xff&(i>>16));
+		buffer[offset+3]=(byte)(0xff&(i>>24));
+		offset+=4;
+		tagLength+=4;
+		return this;
+	}
+
+	/**
+	 * Write a fixed 64 bit integer without tag. Used for packed arrays.
+	 * 
+	 * @param l the value to write
+	 * @return this buffer
+	 */
+	public ProtobufBuffer writeFixed64(long l) {
+		ensureLength(8);
+		byte[] buffer=currentBuffer;
+		buffer[offset]=(byte)(0xff&(l>>0));
+		buffer[offset+1]=(byte)(0xff&(l>>8));
+		buffer[offset+2]=(byte)(0xff&(l>>16));
+		buffer[offset+3]=(byte)(0xff&(l>>24));
+		buffer[offset+4]=(byte)(0xff&(l>>32));
+		buffer[offset+5]=(byte)(0xff&(l>>40));
+		buffer[offset+6]=(byte)(0xff&(l>>48));
+		buffer[offset+7]=(byte)(0xff&(l>>56));
+		offset+=8;
+		tagLength+=8;
+		return this;
+	}
+
 	public ProtobufBuffer write(int field,float f) {
 		return writeFixedInt(field,Float.floatToIntBits(f));
 	}
@@ -404,27 +744,178 @@ class ProtobufBuffer {
 		return this;
 	}
 
+	/**
+	 * Write the string UTF-8 encoded. The characters are encoded directly into the buffer. Like {@link String#getBytes(Charset)},
+	 * unpaired surrogates are replaced by {@code '?'}.
+	 * 
+	 * @param field the field of the string
+	 * @param s the string to write
+	 * @return this buffer
+	 */
 	public ProtobufBuffer write(int field,String s) {
-		return write(field,s.getBytes(UTF8));
+		int len=utf8Length(s);
+		ensureLength(20+len);
+		int c=offset;
+		byte[] buffer=currentBuffer;
+		if(field>0) {
+			offset=writeInt(buffer,offset,(field<<3)|2);
+			offset=writeInt(buffer,offset,len);
+		}
+		offset=writeUtf8(buffer,offset,s);
+		tagLength+=offset-c;
+		return this;
+	}
+	
+	/**
+	 * 
+	 * @param s the string
+	 * @return the length of the UTF-8 encoded string
+	 */
+	static int utf8Length(String s) {
+		int n=s.length();
+		int len=n;
+		for(int i=0;i<n;i++) {
+			char c=s.charAt(i);
+			if(c>=0x80) {
+				if(c<0x800) {
+					len++;
+				} else if(Character.isSurrogate(c)) {
+					if(Character.isHighSurrogate(c)&&i+1<n&&Character.isLowSurrogate(s.charAt(i+1))) {
+						// 4 bytes for two chars
+						len+=2;
+						i++;
+					}
+				} else {
+					len+=2;
+				}
+			}
+		}
+		return len;
+	}
+	
+	private static int writeUtf8(byte[] buffer,int offset,String s) {
+		int n=s.length();
+		for(int i=0;i<n;i++) {
+			char c=s.charAt(i);
+			if(c<0x80) {
+				buffer[offset++]=(byte)c;
+			} else if(c<0x800) {
+				buffer[offset++]=(byte)(0xc0|(c>>6));
+				buffer[offset++]=(byte)(0x80|(c&0x3f));
+			} else if(Character.isSurrogate(c)) {
+				if(Character.isHighSurrogate(c)&&i+1<n&&Character.isLowSurrogate(s.charAt(i+1))) {
+					int cp=Character.toCodePoint(c, s.charAt(++i));
+					buffer[offset++]=(byte)(0xf0|(cp>>18));
+					buffer[offset++]=(byte)(0x80|((cp>>12)&0x3f));
+					buffer[offset++]=(byte)(0x80|((cp>>6)&0x3f));
+					buffer[offset++]=(byte)(0x80|(cp&0x3f));
+				} else {
+					buffer[offset++]=(byte)'?';
+				}
+			} else {
+				buffer[offset++]=(byte)(0xe0|(c>>12));
+				buffer[offset++]=(byte)(0x80|((c>>6)&0x3f));
+				buffer[offset++]=(byte)(0x80|(c&0x3f));
+			}
+		}
+		return offset;
+	}
+	
+	/**
+	 * Decode an UTF-8 encoded string. Pure ASCII content is decoded directly.
+	 * 
+	 * @param value the content array
+	 * @param offset the offset of the string
+	 * @param len the length of the string
+	 * @return the decoded string
+	 */
+	@SuppressWarnings("deprecation")
+	public static String readString(byte[] value,int offset,int len) {
+		for(int i=offset+len-1;i>=offset;i--) {
+			if(value[i]<0) {
+				return new String(value,offset,len,UTF8);
+			}
+		}
+		return new String(value,0,offset,len);
 	}
 
+	/**
+	 * Read a variable length integer (up to 64 bits). If at least 10 bytes (the maximum length of a varint) are
+	 * available, the varint is decoded without bounds checks. The first four bytes are unrolled.
+	 * 
+	 * @return the next long
+	 * @throws IOException if the buffer is exhausted or the varint is malformed
+	 */
 	public long readLong() throws IOException {
-		long accu=0;
-		int shift=0;
-		while(offset<currentBuffer.length) {
+		int pos=offset;
+		if(len-pos<10) {
+			return readLongChecked();
+		}
+		byte[] buffer=currentBuffer;
+		long b=buffer[pos++];
+		if(b>=0) {
+			offset=pos;
+			return b;
+		}
+		long result=b&0x7f;
+		if((b=buffer[pos++])>=0) {
+			offset=pos;
+			return result|(b<<7);
+		}
+		result|=(b&0x7f)<<7;
+		if((b=buffer[pos++])>=0) {
+			offset=pos;
+			return result|(b<<14);
+		}
+		result|=(b&0x7f)<<14;
+		if((b=buffer[pos++])>=0) {
+			offset=pos;
+			return result|(b<<21);
+		}
+		result|=(b&0x7f)<<21;
+		for(int shift=28;shift<64;shift+=7) {
+			b=buffer[pos++];
+			result|=(b&0x7f)<<shift;
+			if(b>=0) {
+				offset=pos;
+				return result;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	private long readLongChecked() throws IOException {
+		long result=0;
+		for(int shift=0;shift<64;shift+=7) {
+			if(offset>=len) {
+				throw new EOFException();
+			}
 			byte b=currentBuffer[offset++];
-			accu|=((b&0x7f)<<shift);
+			result|=(long)(b&0x7f)<<shift;
 			if(b>=0) {
-				return accu;
+				return result;
 			}
-			shift+=7;
 		}
-		throw new EOFException();
+		throw new IOException("Malformed varint");
+	}
+
+	private interface Sink {
+		public void write(byte[] b,int offset,int len) throws IOException;
 	}
 
 	public interface ProtobufListener {
 		public default void consume(int field,int value) {}
 		public default void consume(int field,long value) {}
+		/**
+		 * Consume a fixed 64 bit value. The default implementation doesn't distinguish between variable length and
+		 * fixed 64 bit values.
+		 * 
+		 * @param field the field
+		 * @param value the value
+		 */
+		public default void consumeFixed64(int field,long value) {
+			consume(field,value);
+		}
 		public default void consume(int field,byte[] value,int offset,int len) {}
 		public default void onError(int offset,IOException e) {}
 		public default void done() {}
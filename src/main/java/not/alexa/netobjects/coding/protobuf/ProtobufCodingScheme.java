@@ -15,16 +15,31 @@
  */
 package not.alexa.netobjects.coding.protobuf;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import not.alexa.netobjects.BaseException;
 import not.alexa.netobjects.Context;
 import not.alexa.netobjects.coding.AbstractCodingScheme;
@@ -33,7 +48,9 @@ import not.alexa.netobjects.coding.Decoder;
 import not.alexa.netobjects.coding.Encoder;
 import not.alexa.netobjects.types.AccessibleObject;
 import not.alexa.netobjects.types.ClassTypeDefinition;
+import not.alexa.netobjects.types.ClassTypeDefinition.Field;
 import not.alexa.netobjects.types.DeferredObject;
+import not.alexa.netobjects.types.Flavour;
 import not.alexa.netobjects.types.ObjectType;
 import not.alexa.netobjects.types.PrimitiveTypeDefinition;
 import not.alexa.netobjects.types.TypeDefinition;
@@ -53,18 +70,35 @@ import not.alexa.netobjects.utils.WeakReferenceKeyMap;
  * whenever possible.
  * <li>The coding scheme honours the hints {@code protobuf:signed} to encode in zigzag format and
  * {@code protobuf:fixed} to encode in fixed format.
+ * <li>Arrays of scalar numeric types are encoded packed (that is, as one length delimited field). The decoder accepts
+ * packed and unpacked arrays.
  * <li>The coding scheme honours interfaces and abstract types using "any" as follows: The object is wrapped
  * into a message with first element a type definition and second element the encoded object.
  * Note that the encoding of the second field can be any encoding type since the field can be of any type (including
  * enumerations, integers etc.).
+ * Fields with the hint {@code protobuf:lazy} decode messages in "any" fields lazily: The field is assigned a proxy of the interface
+ * referencing the encoded message which is decoded on first access. Untouched proxies are encoded by copying the encoded
+ * message. Since a proxy is needed, the hint applies to interface fields only. Encoding or decoding other fields with the hint
+ * fails (and {@link #prepare(Context, Class...)} reports the field). Use {@link DeferredObject} fields to keep messages
+ * of class fields undecoded. Lazy messages are self contained, that is, they don't use the type dictionary (if any).
  * <li>The coding scheme supports references as follows: If an object with enabled object refs is serialized,
  * a reference to this object is created. Next time, the reference (an integer) is serialized
  * into the stream using the integer encoding (which differs from the first encoding with variable length).
+ * <li>Encoders reuse their internal buffers (which are pooled per thread). Use {@link #encode(Context, Object, byte[], int)}
+ * or {@link #encode(Context, Object, ByteBuffer)} to encode into memory without intermediate copies.
+ * <li>Objects can be encoded into and decoded from (heap or direct) byte buffers (see {@link #createEncoder(Context, ByteBuffer)} and
+ * {@link #createDecoder(Context, ByteBuffer)}). Files can be decoded memory mapped (see {@link #createDecoder(Context, Path)}).
+ * <li>Optionally, objects are length delimited allowing multiple objects in one stream (see {@link Builder#setDelimited(boolean)}).
+ * The types of "any" fields can be encoded using a dictionary (see {@link Builder#setTypeDictionary(boolean)}).
+ * <li>Decoding can be restricted to selected fields (see {@link ProjectionDecoder#decode(Class, FieldSelector)}).
+ * <li>Unknown fields are skipped or preserved (see {@link Builder#setPreserveUnknownFields(boolean)}).
+ * <li>Codecs are resolved lazily but can be prepared in advance (see {@link #prepare(Context, Class...)}).
  * </ul>
  * 
  * @author notalexa
  */
 public class ProtobufCodingScheme extends AbstractCodingScheme implements CodingScheme {
+	private static final Logger LOG=LoggerFactory.getLogger(ProtobufCodingScheme.class);
 	private static final NativeProtobufSupport NATIVE_SUPPORT;
 	static {
 		NativeProtobufSupport support;
@@ -116,6 +150,15 @@ public class ProtobufCodingScheme extends AbstractCodingScheme implements Coding
 		}
 	};
 	private WeakReferenceKeyMap<Access,AbstractCodec> classCodecs=new WeakReferenceKeyMap<>();
+	private int decodingWindow;
+	private boolean delimited;
+	private boolean twoPassEncoding;
+	private boolean typeDictionary;
+	private boolean preserveUnknownFields;
+	private FieldSelector fieldSelector;
+	private PrimitiveTypeCodec stringCodec;
+	private PrimitiveTypeCodec objectTypeCodec;
+	private NativeProtobufSupport nativeSupport=NATIVE_SUPPORT;
 	
 	static {
 		PRIMITIVE_CODECS.put(ObjectType.class, PrimitiveTypeCodecs.OBJECT_TYPE_CODEC);
@@ -180,18 +223,189 @@ public class ProtobufCodingScheme extends AbstractCodingScheme implements Coding
 		return new ProtobufEncoder(context,this,stream);
 	}
 
+	/**
+	 * Encode the object directly into the given array.
+	 * 
+	 * @param context the context to use for resolving network types
+	 * @param o the object to encode
+	 * @param target the array to write to
+	 * @param offset the offset in the array
+	 * @return the offset in the array behind the encoded object
+	 * @throws BaseException if an error occurs or the array is too small
+	 */
+	public int encode(Context context,Object o,byte[] target,int offset) throws BaseException {
+		return encode(context,o,ByteBuffer.wrap(target,offset,target.length-offset)).position();
+	}
+
+	/**
+	 * Encode the object directly into the given byte buffer. The encoded object is written at the current position
+	 * of the byte buffer.
+	 * 
+	 * @param context the context to use for resolving network types
+	 * @param o the object to encode
+	 * @param target the byte buffer to write to
+	 * @return the byte buffer
+	 * @throws BaseException if an error occurs or the remaining space of the byte buffer is too small
+	 */
+	public ByteBuffer encode(Context context,Object o,ByteBuffer target) throws BaseException {
+		try(Encoder encoder=createEncoder(context,target)) {
+			encoder.encode(o);
+		}
+		return target;
+	}
+
 	@Override
-	public Decoder createDecoder(Context context, InputStream stream) {
+	public ProjectionDecoder createDecoder(Context context, InputStream stream) {
 		return new ProtobufDecoder(context,this,stream);
 	}
 
-	public Decoder createDecoder(Context context, ProtobufBuffer buffer) {
-		return new ProtobufDecoder(context,this,null) {
-			@Override
-			protected ProtobufBuffer getBuffer() throws BaseException {
-				return buffer;
-			}
-		};
+	/**
+	 * Create an encoder writing directly into the given byte buffer (starting at it's current position). The
+	 * byte buffer may be a heap or a direct buffer. Each call of {@link Encoder#encode(Object)} advances the
+	 * position of the byte buffer. If the remaining space of the byte buffer is too small, the encoder
+	 * throws an exception.
+	 * 
+	 * @param context the context to use for resolving network types
+	 * @param target the byte buffer to write to
+	 * @return an encoder for the byte buffer
+	 */
+	public Encoder createEncoder(Context context, ByteBuffer target) {
+		return new ProtobufEncoder(context,this,target);
+	}
+
+	/**
+	 * Create a decoder for the remaining content of the given byte buffer. The position of the byte buffer is not
+	 * changed. Heap buffers are decoded directly without copying. Direct buffers are read through the decoding window
+	 * (see {@link Builder#setDecodingWindow(int)}, at least 8192 bytes), that is, only length delimited fields
+	 * are copied into the heap.
+	 * <br>Deferred content (for example of lazy fields) is copied since the byte buffer is owned by the caller and may be reused.
+	 * 
+	 * @param context the context to use for resolving network types
+	 * @param source the byte buffer to decode
+	 * @return a decoder for the byte buffer
+	 */
+	public ProjectionDecoder createDecoder(Context context, ByteBuffer source) {
+		return createDecoder(context,source,false);
+	}
+
+	/**
+	 * 
+	 * @param context the context to use for resolving network types
+	 * @param source the byte buffer to decode
+	 * @param share if {@code true}, deferred content is a slice of the byte buffer instead of a copy. Only read only
+	 * mappings which don't change afterwards can be shared.
+	 * @return a decoder for the byte buffer
+	 */
+	private ProjectionDecoder createDecoder(Context context, ByteBuffer source, boolean share) {
+		if(source.hasArray()) {
+			return createDecoder(context,new ProtobufBuffer(source.array(),source.arrayOffset()+source.position(),source.remaining()));
+		} else {
+			return new ProtobufDecoder(context,this,new ByteBufferInputStream(source.duplicate()),Math.max(8192,decodingWindow),share?source.duplicate():null);
+		}
+	}
+
+	/**
+	 * Create a decoder for a region of a file. The region is mapped into memory and decoded as a direct byte buffer
+	 * (see {@link #createDecoder(Context, ByteBuffer)}). Deferred objects reference the mapped region (also if the scheme is delimited)
+	 * and are copied only if they are resolved.
+	 * 
+	 * @param context the context to use for resolving network types
+	 * @param channel the file channel
+	 * @param position the start of the region
+	 * @param size the size of the region (at most 2GB)
+	 * @return a decoder for the region
+	 * @throws BaseException if the region cannot be mapped
+	 */
+	public ProjectionDecoder createDecoder(Context context, FileChannel channel, long position, long size) throws BaseException {
+		try {
+			return createDecoder(context,channel.map(MapMode.READ_ONLY, position, size),true);
+		} catch(IOException|IllegalArgumentException e) {
+			return BaseException.throwException(e);
+		}
+	}
+
+	/**
+	 * Create a decoder for a file. The file is mapped into memory.
+	 * 
+	 * @param context the context to use for resolving network types
+	 * @param path the path of the file
+	 * @return a decoder for the file
+	 * @throws BaseException if the file cannot be mapped
+	 * @see #createDecoder(Context, FileChannel, long, long)
+	 */
+	public ProjectionDecoder createDecoder(Context context, Path path) throws BaseException {
+		try(FileChannel channel=FileChannel.open(path, StandardOpenOption.READ)) {
+			// The mapping stays valid after closing the channel
+			return createDecoder(context,channel,0,channel.size());
+		} catch(IOException e) {
+			return BaseException.throwException(e);
+		}
+	}
+
+	/**
+	 * The bytes are decoded directly without copying. Deferred content (for example of lazy fields) is copied.
+	 */
+	@Override
+	public ProjectionDecoder createDecoder(Context context, byte[] bytes) {
+		return createDecoder(context,new ProtobufBuffer(bytes));
+	}
+
+	public ProjectionDecoder createDecoder(Context context, ProtobufBuffer buffer) {
+		return new ProtobufDecoder(context,this,buffer);
+	}
+	
+	/**
+	 * 
+	 * @return the size of the window used to decode streams or 0 if streams are read completely before decoding
+	 * @see Builder#setDecodingWindow(int)
+	 */
+	public int getDecodingWindow() {
+		return decodingWindow;
+	}
+
+	/**
+	 * 
+	 * @return {@code true} if each object is prefixed by its length
+	 * @see Builder#setDelimited(boolean)
+	 */
+	public boolean isDelimited() {
+		return delimited;
+	}
+
+	/**
+	 * 
+	 * @return {@code true} if the encoders of this scheme use two pass encoding
+	 * @see Builder#setTwoPassEncoding(boolean)
+	 */
+	public boolean isTwoPassEncoding() {
+		return twoPassEncoding;
+	}
+
+	/**
+	 * 
+	 * @return {@code true} if types of "any" fields are encoded using a dictionary
+	 * @see Builder#setTypeDictionary(boolean)
+	 */
+	public boolean isTypeDictionary() {
+		return typeDictionary;
+	}
+
+	/**
+	 * 
+	 * @return {@code true} if unknown fields are preserved
+	 * @see Builder#setPreserveUnknownFields(boolean)
+	 */
+	public boolean isPreserveUnknownFields() {
+		return preserveUnknownFields;
+	}
+
+	/**
+	 * 
+	 * @return the default field selector of this scheme or {@code null} if all fields are decoded
+	 * @see Builder#setFieldSelector(FieldSelector)
+	 */
+	public FieldSelector getFieldSelector() {
+		return fieldSelector;
 	}
 
 	public PrimitiveTypeCodec getPrimitiveTypeCodec(Class<?> clazz) {
@@ -199,6 +413,13 @@ public class ProtobufCodingScheme extends AbstractCodingScheme implements Coding
 	}
 
 	public PrimitiveTypeCodec getPrimitiveTypeCodec(CodecType type,Class<?> clazz) {
+		if(stringCodec!=null) {
+			if(clazz==String.class) {
+				return stringCodec;
+			} else if(clazz==ObjectType.class) {
+				return objectTypeCodec;
+			}
+		}
 		return type.getCodecs().get(clazz);
 	}
 
@@ -219,7 +440,7 @@ public class ProtobufCodingScheme extends AbstractCodingScheme implements Coding
 						break;
 					case ClassType: codec=typeAccess instanceof DeferredObject.ClassAccess?new DeferredCodec(typeAccess):new ClassCodec(typeAccess);
 						break;
-					case ArrayType: codec=new ArrayCodec(1, typeAccess);
+					case ArrayType: codec=getArrayCodec(1,CodecType.Default,typeAccess);
 						break;
 				}
 				if(codec!=null) {
@@ -232,6 +453,66 @@ public class ProtobufCodingScheme extends AbstractCodingScheme implements Coding
 		}
 	}
 	
+	/**
+	 * Prepare the codecs of the given classes and of all types reachable from these classes. Codecs are
+	 * otherwise resolved lazily on first use which adds latency to the first objects encoded or decoded.
+	 * <br>The (dynamic) types of interface fields are not known in advance and should be added explicitly
+	 * if necessary. Fields of classes handled by the native protobuf support (see {@link NativeProtobufSupport#isNativeType(Class)})
+	 * are left unresolved, that is, they are encoded and decoded by the support as without preparation.
+	 * 
+	 * @param context the context to use for resolving types
+	 * @param classes the classes to prepare
+	 * @return the types or fields which cannot be resolved (by class or qualified field name). The map is empty if all codecs
+	 * are prepared.
+	 */
+	public Map<String,BaseException> prepare(Context context,Class<?>...classes) {
+		Map<String,BaseException> failures=new LinkedHashMap<>();
+		Set<AbstractCodec> prepared=Collections.newSetFromMap(new IdentityHashMap<>());
+		for(Class<?> clazz:classes) {
+			try {
+				TypeDefinition def=context.resolveType(clazz);
+				if(def==null) {
+					failures.put(clazz.getName(),new BaseException(BaseException.NOT_FOUND,"Unresolvable type "+clazz.getName()));
+				} else {
+					AbstractCodec codec=getClassCodec(context, def);
+					if(codec!=null&&prepared.add(codec)) {
+						codec.prepare(this,prepared,failures);
+					}
+				}
+			} catch(RuntimeException e) {
+				failures.put(clazz.getName(),BaseException.normalize(e));
+			}
+		}
+		return failures;
+	}
+	
+	/**
+	 * Arrays of scalar numeric types (including boolean and char) are encoded packed, all other arrays
+	 * are encoded as repeated fields.
+	 * 
+	 * @param offset the offset (index) of the field in the declaring type
+	 * @param type the codec type to use for the components
+	 * @param arrayAccess the access of the array
+	 * @return a codec for the array
+	 */
+	public AbstractCodec getArrayCodec(int offset,CodecType type,Access arrayAccess) {
+		try {
+			Access componentAccess=arrayAccess.getComponentAccess();
+			if(componentAccess.getType().getFlavour()==Flavour.PrimitiveType) {
+				Class<?> componentClass=componentAccess.getType().asClass(arrayAccess.getAccessLoader());
+				PackedArrayCodec.Packing packing=PackedArrayCodec.Packing.get(type,componentClass);
+				if(packing!=null) {
+					return new PackedArrayCodec(offset,arrayAccess,componentAccess,getPrimitiveTypeCodec(type,componentClass),packing);
+				}
+			}
+		} catch(BaseException e) {
+			// Packing is an optimization only: the array codec resolves the component access on first use (or in prepare())
+			// and reports the failure there, where the exception can be thrown and collected.
+			LOG.debug("Component of {} not resolvable, falling back to unpacked encoding",arrayAccess.getType(),e);
+		}
+		return new ArrayCodec(offset,arrayAccess);
+	}
+
 	public interface PrimitiveTypeCodec {
 		public void encode(ProtobufBuffer buffer,int field, Object o);
 		public default Object decode(long value) throws BaseException {
@@ -240,18 +521,126 @@ public class ProtobufCodingScheme extends AbstractCodingScheme implements Coding
 		public default Object decode(byte[] value, int offset, int len) throws BaseException {
 			throw new BaseException(BaseException.BAD_REQUEST, "Illegal encoding");
 		}
+
+		/**
+		 * Fields of a primitive java type are encoded and decoded without boxing if the codec supports the type.
+		 * Integral values and booleans are passed as long, floating point values as double.
+		 * 
+		 * @return the primitive java type supported by this codec or {@code null}
+		 * @see Access#getPrimitiveFieldType(Field)
+		 */
+		public default Class<?> getPrimitiveType() {
+			return null;
+		}
+
+		/**
+		 * Encode an integral (or boolean) value of the {@link #getPrimitiveType() primitive type}. The default implementation
+		 * boxes the value and calls {@link #encode(ProtobufBuffer, int, Object)}.
+		 * 
+		 * @param buffer the buffer
+		 * @param field the field number
+		 * @param v the value
+		 */
+		public default void encodeLong(ProtobufBuffer buffer,int field,long v) {
+			Class<?> type=getPrimitiveType();
+			Object o;
+			if(type==int.class) {
+				o=(int)v;
+			} else if(type==boolean.class) {
+				o=v!=0;
+			} else if(type==short.class) {
+				o=(short)v;
+			} else if(type==byte.class) {
+				o=(byte)v;
+			} else if(type==char.class) {
+				o=(char)v;
+			} else {
+				o=v;
+			}
+			encode(buffer,field,o);
+		}
+
+		/**
+		 * Decode an integral (or boolean) value of the {@link #getPrimitiveType() primitive type}. The default implementation
+		 * unboxes the result of {@link #decode(long)}.
+		 * 
+		 * @param value the raw value
+		 * @return the decoded value (booleans are decoded as 0 or 1)
+		 * @throws BaseException if the value cannot be decoded
+		 */
+		public default long decodeLong(long value) throws BaseException {
+			Object o=decode(value);
+			if(o instanceof Number) {
+				return ((Number)o).longValue();
+			} else if(o instanceof Boolean) {
+				return ((Boolean)o)?1:0;
+			} else if(o instanceof Character) {
+				return (Character)o;
+			} else {
+				throw new BaseException(BaseException.BAD_REQUEST, "Illegal encoding");
+			}
+		}
+
+		/**
+		 * Encode a floating point value of the {@link #getPrimitiveType() primitive type}. The default implementation
+		 * boxes the value and calls {@link #encode(ProtobufBuffer, int, Object)}.
+		 * 
+		 * @param buffer the buffer
+		 * @param field the field number
+		 * @param v the value
+		 */
+		public default void encodeDouble(ProtobufBuffer buffer,int field,double v) {
+			encode(buffer,field,getPrimitiveType()==float.class?(Object)(float)v:(Object)v);
+		}
+
+		/**
+		 * Decode a floating point value of the {@link #getPrimitiveType() primitive type}. The default implementation
+		 * unboxes the result of {@link #decode(long)}.
+		 * 
+		 * @param value the raw value
+		 * @return the decoded value
+		 * @throws BaseException if the value cannot be decoded
+		 */
+		public default double decodeDouble(long value) throws BaseException {
+			Object o=decode(value);
+			if(o instanceof Number) {
+				return ((Number)o).doubleValue();
+			} else {
+				throw new BaseException(BaseException.BAD_REQUEST, "Illegal encoding");
+			}
+		}
 	}
 	
 	public byte[] getProtobufContent(Object o) {
-		return NATIVE_SUPPORT.getProtobufContent(o);
+		return nativeSupport.getProtobufContent(o);
 	}
 
 	public AccessibleObject getProtobufObject(AccessContext context,Access fieldAccess, byte[] value, int offset, int len) {
-		return NATIVE_SUPPORT.getProtobufObject(context,fieldAccess, value, offset, len);
+		return nativeSupport.getProtobufObject(context,fieldAccess, value, offset, len);
+	}
+
+	/**
+	 * 
+	 * @param access the access of a class
+	 * @return {@code true} if objects of the class are encoded and decoded by the native protobuf support
+	 */
+	public boolean isNativeType(Access access) {
+		Class<?> clazz=access.getType().asClass(access.getAccessLoader());
+		return clazz!=null&&nativeSupport.isNativeType(clazz);
 	}
 
 	public ClassCodec getAnyCodec(Access access) {
-		return new AnyCodec(access);
+		return getAnyCodec(access,false);
+	}
+	
+	/**
+	 * 
+	 * @param access the access of the interface
+	 * @param lazy if {@code true}, messages are decoded lazily
+	 * @return a codec for the given interface
+	 */
+	public ClassCodec getAnyCodec(Access access,boolean lazy) {
+		return new AnyCodec(access,lazy);
 	}
 	
 	public interface NativeProtobufSupport {
@@ -261,7 +650,17 @@ public class ProtobufCodingScheme extends AbstractCodingScheme implements Coding
 		public default AccessibleObject getProtobufObject(AccessContext context,Access fieldAccess, byte[] value, int offset, int len) {
 			return null;
 		}
-		
+
+		/**
+		 * 
+		 * @param clazz the class
+		 * @return {@code true} if objects of the class are encoded and decoded by this support. Codecs of such classes
+		 * are not prepared (see {@link ProtobufCodingScheme#prepare(Context, Class...)}).
+		 */
+		public default boolean isNativeType(Class<?> clazz) {
+			return false;
+		}
+
 	}
 	public enum CodecType {
 		Default(PRIMITIVE_CODECS),
@@ -286,9 +685,239 @@ public class ProtobufCodingScheme extends AbstractCodingScheme implements Coding
 		private Builder(ProtobufCodingScheme scheme) {
 			super(scheme);
 		}
+		
+		/**
+		 * Decode input streams while reading. Instead of reading the stream completely into memory, the stream
+		 * is read through a window of the given size. Only length delimited fields (sub messages, strings
+		 * and byte arrays) are held in memory completely.
+		 * <br>The default is 0, which means that the stream is read completely before decoding.
+		 * 
+		 * @param windowSize the size of the window (in bytes) or 0 to disable streaming
+		 * @return this builder for additional configuration
+		 */
+		public Builder setDecodingWindow(int windowSize) {
+			scheme.decodingWindow=Math.max(0,windowSize);
+			return this;
+		}
+		
+		/**
+		 * Prefix each encoded object with it's length (as a varint). This is the framing used by the {@code writeDelimitedTo()} and
+		 * {@code parseDelimitedFrom()} methods of the protobuf library and allows multiple objects in one stream. Decoders
+		 * of a delimited scheme read the objects one by one (see {@link Decoder#decodeAll(Class)}).
+		 * <br>The default is {@code false}, which means that a stream contains exactly one object.
+		 * 
+		 * @param delimited {@code true} if objects should be length delimited
+		 * @return this builder for additional configuration
+		 */
+		public Builder setDelimited(boolean delimited) {
+			scheme.delimited=delimited;
+			return this;
+		}
+		
+		/**
+		 * Use two pass encoding. By default, the encoder reserves one byte for the length of a sub message and shifts the
+		 * content if the length needs more bytes. For deeply nested objects with large content, the shifting is expensive.
+		 * With two pass encoding, the encoder records the lengths of all sub messages in the first pass and inserts them
+		 * while writing the encoded object in the second pass. The encoded object is the same in both cases.
+		 * 
+		 * @param twoPass {@code true} if two pass encoding should be used
+		 * @return this builder for additional configuration
+		 */
+		public Builder setTwoPassEncoding(boolean twoPass) {
+			scheme.twoPassEncoding=twoPass;
+			return this;
+		}
+		
+		/**
+		 * Encode the types of "any" fields using a dictionary. The first occurrence of a type in an encoder defines an id for the type
+		 * which is used instead of the type afterwards. The dictionary spans all objects written by the encoder (which is useful
+		 * for delimited schemes, see {@link #setDelimited(boolean)}). The decoder maintains the same dictionary.
+		 * <br>Messages kept undecoded by the decoder are self contained, that is, types inside these messages are encoded without the
+		 * dictionary. These are the messages of lazy "any" fields (see {@code protobuf:lazy}) and of {@link DeferredObject} fields, which
+		 * can therefore be resolved later and copied into other streams. All other messages use the dictionary of the stream.
+		 * <br>Definitions in messages skipped by the decoder (unknown fields, fields not selected by the field selector, see
+		 * {@link #setFieldSelector(FieldSelector)}, and messages of unknown types in "any" fields) are lost, and decoding fails if the stream
+		 * references them afterwards. For the same reason, unknown fields cannot be preserved (see {@link #setPreserveUnknownFields(boolean)})
+		 * and deferred objects of unknown types cannot be copied into other streams.
+		 * <br>The default is {@code false}.
+		 * 
+		 * @param typeDictionary {@code true} if types should be encoded using a dictionary
+		 * @return this builder for additional configuration
+		 */
+		public Builder setTypeDictionary(boolean typeDictionary) {
+			scheme.typeDictionary=typeDictionary;
+			return this;
+		}
+		
+		/**
+		 * Fields unknown to the local type definition are skipped while decoding. If unknown fields are preserved, they are retained
+		 * in their encoded form and passed to objects implementing {@link UnknownFieldSupport}. Encoding such an object
+		 * writes the retained fields unchanged (after the known fields). If the scheme uses a type dictionary, decoding fails if
+		 * a length delimited field has to be preserved (see {@link #setTypeDictionary(boolean)}).
+		 * <br>The default is {@code false}.
+		 * 
+		 * @param preserveUnknownFields {@code true} if unknown fields should be preserved
+		 * @return this builder for additional configuration
+		 */
+		public Builder setPreserveUnknownFields(boolean preserveUnknownFields) {
+			scheme.preserveUnknownFields=preserveUnknownFields;
+			return this;
+		}
+		
+		/**
+		 * Decode only the fields selected by the given selector if {@link Decoder#decode(Class)} is called (see
+		 * {@link ProjectionDecoder#decode(Class, FieldSelector)}). Encoding is not affected.
+		 * <br>The default is {@code null} (decode all fields).
+		 * 
+		 * @param fieldSelector the selector or {@code null} if all fields should be decoded
+		 * @return this builder for additional configuration
+		 */
+		public Builder setFieldSelector(FieldSelector fieldSelector) {
+			scheme.fieldSelector=fieldSelector;
+			return this;
+		}
+		
+		/**
+		 * Use the given native protobuf support. Fields holding objects handled by the support (the generated message classes of the
+		 * protobuf library for example) are encoded and decoded by the support instead of a codec of this scheme.
+		 * <br>The default is the support of the {@code protobuf} module if present.
+		 * 
+		 * @param nativeSupport the native support or {@code null} for the default support
+		 * @return this builder for additional configuration
+		 */
+		public Builder setNativeSupport(NativeProtobufSupport nativeSupport) {
+			scheme.nativeSupport=nativeSupport==null?NATIVE_SUPPORT:nativeSupport;
+			// Codecs of the original scheme may have been prepared for the other support
+			scheme.classCodecs=new WeakReferenceKeyMap<>();
+			return this;
+		}
+
+		/**
+		 * Intern decoded strings and object types. Decoded values are held in a bounded table (per coding scheme) and
+		 * equal values decoded later are taken from the table. This reduces allocation if the same values (like
+		 * enumeration like status values or the types of "any" fields) are decoded repeatedly.
+		 * <br>The default is no interning.
+		 * 
+		 * @param capacity the capacity of the table or 0 to disable interning
+		 * @param maxLength strings with a longer encoding (in bytes) are not interned. Object types are always interned.
+		 * @return this builder for additional configuration
+		 */
+		public Builder setInterning(int capacity,int maxLength) {
+			if(capacity>0) {
+				scheme.stringCodec=new InterningCodec(PrimitiveTypeCodecs.STRING_CODEC,capacity,maxLength);
+				scheme.objectTypeCodec=new InterningCodec(PrimitiveTypeCodecs.OBJECT_TYPE_CODEC,capacity,Integer.MAX_VALUE);
+			} else {
+				scheme.stringCodec=scheme.objectTypeCodec=null;
+			}
+			// Codecs of the original scheme are resolved without interning
+			scheme.classCodecs=new WeakReferenceKeyMap<>();
+			return this;
+		}
+	}
+	
+	/**
+	 * Input stream reading the remaining content of a byte buffer.
+	 */
+	static class ByteBufferInputStream extends InputStream {
+		private ByteBuffer buffer;
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer=buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining()?buffer.get()&0xff:-1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if(len==0) {
+				return 0;
+			} else if(!buffer.hasRemaining()) {
+				return -1;
+			}
+			len=Math.min(len, buffer.remaining());
+			buffer.get(b,off,len);
+			return len;
+		}
+
+		@Override
+		public long skip(long n) {
+			n=Math.max(0,Math.min(n, buffer.remaining()));
+			((Buffer)buffer).position(buffer.position()+(int)n);
+			return n;
+		}
+	}
+	
+	/**
+	 * Selector for projected decoding.
+	 * 
+	 * @author notalexa
+	 * @see ProjectionDecoder#decode(Class, FieldSelector)
+	 */
+	public interface FieldSelector {
+		/**
+		 * 
+		 * @param type the type containing the field
+		 * @param field the field
+		 * @return {@code true} if the field should be decoded
+		 */
+		public boolean isSelected(TypeDefinition type,Field field);
+		
+		/**
+		 * 
+		 * @param type the type to project
+		 * @param fields the names of the fields to decode
+		 * @return a selector decoding only the given fields of the given type (and all fields of other types). Types
+		 * match if they share their (named) types, that is, different definitions of the same type select the same fields.
+		 */
+		public static FieldSelector of(TypeDefinition type,String...fields) {
+			Set<String> names=new HashSet<>(Arrays.asList(fields));
+			return (t,f)->(t!=type&&type.check(t)!=0)||names.contains(f.getName());
+		}
+	}
+	
+	/**
+	 * Decoder of this scheme supporting projected decoding.
+	 * 
+	 * @author notalexa
+	 */
+	public interface ProjectionDecoder extends Decoder {
+		/**
+		 * Decode only the fields selected by the given selector. Other fields are skipped on the wire level, that is, nested messages
+		 * and arrays of skipped fields are never decoded. Skipped fields keep their initial value (required fields are considered
+		 * present if they are present on the wire). Lazy and deferred messages are decoded completely when they are resolved.
+		 * 
+		 * @param <T> the requested type
+		 * @param clazz the class representing the type
+		 * @param selector the selector or {@code null} if all fields should be decoded
+		 * @return a decoded object of the given type
+		 * @throws BaseException if an error occurs
+		 */
+		public <T> T decode(Class<T> clazz,FieldSelector selector) throws BaseException;
+	}
+	
+	/**
+	 * Interface for objects retaining fields unknown to the local type definition.
+	 * 
+	 * @author notalexa
+	 * @see Builder#setPreserveUnknownFields(boolean)
+	 */
+	public interface UnknownFieldSupport {
+		/**
+		 * 
+		 * @return the unknown fields in their encoded form or {@code null} if there are no unknown fields
+		 */
+		public byte[] getUnknownFields();
+		
+		/**
+		 * 
+		 * @param unknownFields the unknown fields in their encoded form
+		 */
+		public void setUnknownFields(byte[] unknownFields);
 	}
 	
 	public interface BufferWriter {
-		public void write(ProtobufBuffer buffer,int field);
+		public void write(ProtobufBuffer buffer,int field) throws BaseException;
 	}
 }
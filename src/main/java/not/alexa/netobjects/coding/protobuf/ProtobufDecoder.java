@@ -18,15 +18,24 @@ package not.alexa.netobjects.coding.protobuf;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import not.alexa.netobjects.BaseException;
 import not.alexa.netobjects.Context;
 import not.alexa.netobjects.coding.Decoder;
 import not.alexa.netobjects.coding.DefaultCodingSupport;
 import not.alexa.netobjects.coding.protobuf.ProtobufBuffer.ProtobufListener;
+import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.ByteBufferInputStream;
+import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.FieldSelector;
 import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.PrimitiveTypeCodec;
+import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.ProjectionDecoder;
+import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.UnknownFieldSupport;
 import not.alexa.netobjects.types.AccessibleObject;
 import not.alexa.netobjects.types.JavaClass.Type;
+import not.alexa.netobjects.types.ObjectType;
 import not.alexa.netobjects.types.TypeDefinition;
 import not.alexa.netobjects.types.access.Access;
 import not.alexa.netobjects.types.access.AccessContext;
@@ -37,7 +46,7 @@ import not.alexa.netobjects.types.access.RuntimeInfo;
  * 
  * @author notalexa
  */
-class ProtobufDecoder extends DefaultCodingSupport implements Decoder {
+class ProtobufDecoder extends DefaultCodingSupport implements ProjectionDecoder {
 	private static final int[] MASK=new int[32];
 	static {
 		for(int i=0;i<32;i++) {
@@ -47,18 +56,50 @@ class ProtobufDecoder extends DefaultCodingSupport implements Decoder {
 	private boolean read;
 	private ProtobufBuffer buffer;
 	private InputStream stream;
+	private ProtobufStream messages;
+	private ProtobufStream current;
+	private ByteBuffer source;
+	private List<ObjectType> types;
 	private final ProtobufCodingScheme scheme;
 	private final Context context;
+	private final int decodingWindow;
+	private FieldSelector selector;
 
 	ProtobufDecoder(Context context,ProtobufCodingScheme scheme,InputStream stream) {
+		this(context,scheme,stream,scheme.getDecodingWindow());
+	}
+
+	ProtobufDecoder(Context context,ProtobufCodingScheme scheme,InputStream stream,int decodingWindow) {
 		this.stream=stream;
 		this.scheme=scheme;
 		this.context=context;
+		this.decodingWindow=decodingWindow;
+	}
+
+	/**
+	 * Create a decoder for a (direct) byte buffer.
+	 * 
+	 * @param context the context
+	 * @param scheme the coding scheme
+	 * @param stream the stream reading from the byte buffer
+	 * @param decodingWindow the decoding window
+	 * @param source if not {@code null}, the byte buffer (positioned at the beginning of the stream) which is read only and
+	 * shared with deferred content
+	 */
+	ProtobufDecoder(Context context,ProtobufCodingScheme scheme,InputStream stream,int decodingWindow,ByteBuffer source) {
+		this(context,scheme,stream,decodingWindow);
+		this.source=source;
+	}
+
+	ProtobufDecoder(Context context,ProtobufCodingScheme scheme,ProtobufBuffer buffer) {
+		this(context,scheme,(InputStream)null);
+		this.buffer=buffer;
 	}
 
 	@Override
 	public void close() throws BaseException {
 		stream=null;
+		messages=null;
 	}
 	
 	protected ProtobufBuffer getBuffer() throws BaseException {
@@ -79,29 +120,174 @@ class ProtobufDecoder extends DefaultCodingSupport implements Decoder {
 		throw new BaseException();
 	}
 
+	private ProtobufStream getMessages() {
+		if(messages==null) {
+			messages=new ProtobufStream(stream,decodingWindow>0?decodingWindow:8192,source);
+		}
+		return messages;
+	}
+
+	/**
+	 * Read the next message of a delimited coding scheme.
+	 * 
+	 * @return the next message
+	 * @throws BaseException if the message cannot be read
+	 * @see ProtobufCodingScheme.Builder#setDelimited(boolean)
+	 */
+	private ProtobufBuffer nextMessage() throws BaseException {
+		try {
+			if(stream!=null) {
+				return getMessages().readDelimited();
+			} else if(buffer!=null) {
+				return buffer.readDelimited();
+			}
+		} catch(IOException e) {
+			return BaseException.throwException(e);
+		}
+		throw new BaseException();
+	}
+
+	/**
+	 * Read the next message of a delimited coding scheme as a slice of the source.
+	 * 
+	 * @return the next message
+	 * @throws BaseException if the message cannot be read
+	 * @see #nextMessage()
+	 */
+	private ByteBuffer nextSlice() throws BaseException {
+		try {
+			return getMessages().sliceDelimited();
+		} catch(IOException e) {
+			return BaseException.throwException(e);
+		}
+	}
+
+	/**
+	 * Skip the next message of a delimited coding scheme.
+	 * 
+	 * @throws BaseException if the message cannot be read
+	 */
+	private void skipMessage() throws BaseException {
+		if(source!=null) {
+			nextSlice();
+		} else {
+			nextMessage();
+		}
+	}
+
+	/**
+	 * Consume a stream. Content passed to the listener can be shared while consuming.
+	 * 
+	 * @param <T> the type of the listener
+	 * @param stream the stream to consume
+	 * @param listener the listener to feed
+	 * @return the listener
+	 * @see #share(byte[], int, int)
+	 */
+	private <T extends ProtobufListener> T consume(ProtobufStream stream,T listener) {
+		current=stream;
+		try {
+			return current.consume(listener);
+		} finally {
+			current=null;
+		}
+	}
+
+	/**
+	 * Feed the listener with the content of this decoder. If the coding scheme is delimited, the next message is read
+	 * completely and decoded. Otherwise, if the coding scheme defines a decoding window,
+	 * an underlying stream is decoded while reading. If not, the content is read completely into
+	 * a buffer before decoding.
+	 * 
+	 * @param <T> the type of the listener
+	 * @param listener the listener to feed
+	 * @return the listener
+	 * @throws BaseException if an error occurs
+	 * @see ProtobufCodingScheme.Builder#setDecodingWindow(int)
+	 */
+	protected <T extends ProtobufListener> T consume(T listener) throws BaseException {
+		if(scheme.isDelimited()) {
+			if(source!=null) {
+				// Decode the message directly from the source
+				ByteBuffer message=nextSlice();
+				return consume(new ProtobufStream(new ByteBufferInputStream(message.duplicate()),decodingWindow,message),listener);
+			}
+			return nextMessage().consume(listener);
+		}
+		if(!read&&stream!=null&&decodingWindow>0) {
+			read=true;
+			return consume(new ProtobufStream(stream,decodingWindow,source),listener);
+		}
+		return getBuffer().consume(listener);
+	}
+
+	/**
+	 * Content passed to listeners may be valid only during the call (if the content is read through a window).
+	 * This method returns a stable representation of the content which doesn't change afterwards.
+	 * Content of mapped files is shared, otherwise it is copied (since arrays and byte buffers are owned by the caller
+	 * and may be reused).
+	 * 
+	 * @param value the array passed to the listener
+	 * @param offset the offset passed to the listener
+	 * @param len the length passed to the listener
+	 * @return a stable representation of the content
+	 */
+	ByteBuffer share(byte[] value,int offset,int len) {
+		return current!=null?current.share(value,offset,len):ByteBuffer.wrap(Arrays.copyOfRange(value,offset,offset+len));
+	}
+
 	@Override
 	public <T> T decode(Class<T> clazz) throws BaseException {
+		return decode(clazz,scheme.getFieldSelector());
+	}
+
+	@Override
+	public <T> T decode(Class<T> clazz,FieldSelector selector) throws BaseException {
+		this.selector=selector;
+		try {
+			return decodeObject(clazz);
+		} finally {
+			this.selector=null;
+		}
+	}
+
+	private <T> T decodeObject(Class<T> clazz) throws BaseException {
 		TypeDefinition def=scheme.getRootType(context,clazz);
-		ProtobufBuffer buffer=getBuffer();
 		if(def!=null) {
 			AbstractCodec codec=scheme.getClassCodec(context, def);
 			if(codec==null) {
 				Class<?> c=def.asClass(context.getTypeLoader().getClassLoader());
 				PrimitiveTypeCodec primitiveTypeCodec=scheme.getPrimitiveTypeCodec(c);
 				if(primitiveTypeCodec!=null) {
-					return context.cast(clazz,buffer.consume(new PrimitiveTypeListener(primitiveTypeCodec)).getResult());
+					return context.cast(clazz,consume(new PrimitiveTypeListener(primitiveTypeCodec)).getResult());
 				} else {
 					throw new BaseException(BaseException.BAD_REQUEST,"Decoding object of class "+c.getSimpleName());
 				}
 			} else {
-				return context.cast(clazz,buffer.consume(new ClassDefListener(codec)).getResult());
+				return context.cast(clazz,consume(new ClassDefListener(codec)).getResult());
 			}
 		}
+		if(scheme.isDelimited()) {
+			// Skip the message
+			skipMessage();
+		} else {
+			read=true;
+		}
 		return null;
 	}
 
 	@Override
 	public boolean hasNext() {
+		if(scheme.isDelimited()) try {
+			if(stream!=null) {
+				return getMessages().hasRemaining();
+			} else {
+				return buffer!=null&&buffer.hasRemaining();
+			}
+		} catch(IOException e) {
+			// Let decode() report the error
+			return true;
+		}
 		return !read;
 	}
 	
@@ -158,6 +344,8 @@ class ProtobufDecoder extends DefaultCodingSupport implements Decoder {
 		int[] mask;
 		AccessibleObject array;
 		ArrayEntry arrays;
+		ProtobufBuffer unknownFields;
+		int wireType;
 
 		private ClassDefListener(AbstractCodec codec) throws BaseException {
 			this.codec=codec;
@@ -177,6 +365,7 @@ class ProtobufDecoder extends DefaultCodingSupport implements Decoder {
 			first=null;
 			array=null;
 			arrays=null;
+			unknownFields=null;
 			return this;
 		}
 		
@@ -210,7 +399,62 @@ class ProtobufDecoder extends DefaultCodingSupport implements Decoder {
 		}
 		
 		public AccessibleObject finalized() throws BaseException {
-			return codec.finalize(this,currentObject(), arrays,mask);
+			AccessibleObject result=codec.finalize(this,currentObject(), arrays,mask);
+			if(unknownFields!=null) {
+				Object o=result.getObject();
+				if(o instanceof UnknownFieldSupport) {
+					((UnknownFieldSupport)o).setUnknownFields(unknownFields.writeTo(ByteBuffer.allocate(unknownFields.size())).array());
+				}
+				unknownFields=null;
+			}
+			return result;
+		}
+		
+		/**
+		 * Skip a field unknown to the codec. If the coding scheme preserves unknown fields, the field is retained
+		 * (using the wire type of the field) and passed to the decoded object if it implements {@link UnknownFieldSupport}.
+		 * 
+		 * @param field the field number
+		 * @param value the value of the field
+		 * @see ProtobufCodingScheme.Builder#setPreserveUnknownFields(boolean)
+		 */
+		public void skip(int field,long value) {
+			if(scheme.isPreserveUnknownFields()) {
+				switch(wireType) {
+					case 1:getUnknownFields().writeFixedLong(field, value);
+						break;
+					case 5:getUnknownFields().writeFixedInt(field, (int)value);
+						break;
+					default:getUnknownFields().write(field, value);
+				}
+			}
+		}
+
+		/**
+		 * Skip a length delimited field unknown to the codec. If the coding scheme uses a type dictionary, the field may reference
+		 * the dictionary of the decoder and cannot be preserved.
+		 * 
+		 * @param field the field number
+		 * @param value the content array
+		 * @param offset the offset of the content
+		 * @param len the length of the content
+		 * @throws BaseException if the field should be preserved but the coding scheme uses a type dictionary
+		 * @see #skip(int, long)
+		 */
+		public void skip(int field,byte[] value,int offset,int len) throws BaseException {
+			if(scheme.isPreserveUnknownFields()) {
+				if(scheme.isTypeDictionary()) {
+					throw new BaseException(BaseException.BAD_REQUEST,"Cannot preserve unknown field #"+field+" using a type dictionary");
+				}
+				getUnknownFields().write(field, value, offset, len);
+			}
+		}
+		
+		private ProtobufBuffer getUnknownFields() {
+			if(unknownFields==null) {
+				unknownFields=new ProtobufBuffer();
+			}
+			return unknownFields;
 		}
 		
 		public AccessibleObject currentObject() throws BaseException {
@@ -247,7 +491,16 @@ class ProtobufDecoder extends DefaultCodingSupport implements Decoder {
 
 		@Override
 		public void consume(int field, int value) {
+			wireType=5;
 			consume(field,(long)value);
+			wireType=0;
+		}
+
+		@Override
+		public void consumeFixed64(int field, long value) {
+			wireType=1;
+			consume(field,value);
+			wireType=0;
 		}
 
 		@Override
@@ -303,9 +556,63 @@ class ProtobufDecoder extends DefaultCodingSupport implements Decoder {
 			codec.consume(listener, field, obj);
 		}
 
+		/**
+		 * 
+		 * @param value the content array
+		 * @param offset the offset of the content
+		 * @param len the length of the content
+		 * @return a stable representation of the content
+		 * @see ProtobufDecoder#share(byte[], int, int)
+		 */
+		public ByteBuffer share(byte[] value,int offset,int len) {
+			return ProtobufDecoder.this.share(value, offset, len);
+		}
+
+		/**
+		 * 
+		 * @param id the id of a type in the type dictionary of the decoder
+		 * @return the type
+		 * @throws BaseException if the type is not defined
+		 * @see ProtobufCodingScheme.Builder#setTypeDictionary(boolean)
+		 */
+		public ObjectType getType(int id) throws BaseException {
+			ObjectType type=types==null||id<=0||id>types.size()?null:types.get(id-1);
+			if(type==null) {
+				throw new BaseException(BaseException.BAD_REQUEST,"Undefined type #"+id);
+			}
+			return type;
+		}
+
+		/**
+		 * Define a type in the type dictionary of the decoder.
+		 * 
+		 * @param id the id of the type
+		 * @param type the type
+		 */
+		public void defineType(int id,ObjectType type) throws BaseException {
+			if(id<=0||type==null) {
+				throw new BaseException(BaseException.BAD_REQUEST,"Illegal type definition #"+id);
+			}
+			if(types==null) {
+				types=new ArrayList<>();
+			}
+			while(types.size()<id) {
+				types.add(null);
+			}
+			types.set(id-1, type);
+		}
+
 		public ProtobufCodingScheme getCodingScheme() {
 			return scheme;
 		}
+
+		/**
+		 * 
+		 * @return the field selector of the current decoding or {@code null} if all fields are decoded
+		 */
+		public FieldSelector getFieldSelector() {
+			return selector;
+		}
 	}
 	
 	interface Creator {
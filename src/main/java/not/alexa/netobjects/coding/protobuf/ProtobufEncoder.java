@@ -17,6 +17,12 @@ package not.alexa.netobjects.coding.protobuf;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import not.alexa.netobjects.BaseException;
 import not.alexa.netobjects.Context;
@@ -24,6 +30,7 @@ import not.alexa.netobjects.coding.DefaultCodingSupport;
 import not.alexa.netobjects.coding.Encoder;
 import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.PrimitiveTypeCodec;
 import not.alexa.netobjects.types.JavaClass.Type;
+import not.alexa.netobjects.types.ObjectType;
 import not.alexa.netobjects.types.TypeDefinition;
 import not.alexa.netobjects.types.access.Access;
 import not.alexa.netobjects.types.access.AccessContext;
@@ -37,14 +44,23 @@ import not.alexa.netobjects.types.access.RuntimeInfo;
 class ProtobufEncoder extends DefaultCodingSupport implements Encoder, AccessContext {
 	private final ProtobufCodingScheme scheme;
 	private OutputStream stream;
-	private final ProtobufBuffer buffer;
+	private ByteBuffer target;
+	private ProtobufBuffer buffer;
 	private final Context context;
+	private Map<String,Integer> typeIds;
+	private List<String> types;
+	private int selfContained;
 
 	ProtobufEncoder(Context context,ProtobufCodingScheme scheme,OutputStream stream) {
 		this.scheme=scheme;
 		this.context=context;
 		this.stream=stream;
-		this.buffer=new ProtobufBuffer();
+		this.buffer=ProtobufBuffer.lease(scheme.isTwoPassEncoding());
+	}
+
+	ProtobufEncoder(Context context,ProtobufCodingScheme scheme,ByteBuffer target) {
+		this(context,scheme,(OutputStream)null);
+		this.target=target;
 	}
 
 	@Override
@@ -52,10 +68,23 @@ class ProtobufEncoder extends DefaultCodingSupport implements Encoder, AccessCon
 		return scheme;
 	}
 
+	@Override
+	public boolean supportsMultipleObjects() {
+		return scheme.isDelimited();
+	}
+
 	@Override
 	public void close() throws BaseException {
-		flush();
+		if(buffer!=null) try {
+			if(stream!=null) {
+				flush();
+			}
+		} finally {
+			buffer.release();
+			buffer=null;
+		}
 		stream=null;
+		target=null;
 	}
 
 	@Override
@@ -73,7 +102,101 @@ class ProtobufEncoder extends DefaultCodingSupport implements Encoder, AccessCon
 
 	@Override
 	public Encoder encode(Object o) throws BaseException {
-		if(o!=null) {
+		if(target!=null) {
+			encode(o,target);
+		} else if(o!=null) {
+			write(o,scheme.isDelimited()?content->content.writeDelimitedTo(stream):content->content.writeTo(stream));
+		}
+		return this;
+	}
+
+	/**
+	 * Encode the object into the given byte buffer.
+	 * 
+	 * @param o the object to encode
+	 * @param target the byte buffer to write to
+	 * @return the byte buffer
+	 * @throws BaseException if an error occurs or the byte buffer is too small
+	 */
+	ByteBuffer encode(Object o,ByteBuffer target) throws BaseException {
+		if(o!=null) try {
+			write(o,scheme.isDelimited()?content->content.writeDelimitedTo(target):content->content.writeTo(target));
+		} catch(BufferOverflowException e) {
+			throw new BaseException(BaseException.BAD_REQUEST,"Buffer too small to encode "+o.getClass().getSimpleName());
+		}
+		return target;
+	}
+
+	/**
+	 * 
+	 * @return {@code true} if the types of "any" fields are encoded using the type dictionary of this encoder. This is the case
+	 * if the coding scheme uses a type dictionary and the encoder doesn't encode a self contained message.
+	 * @see #beginSelfContained()
+	 * @see ProtobufCodingScheme.Builder#setTypeDictionary(boolean)
+	 */
+	boolean isTypeDictionary() {
+		return selfContained==0&&scheme.isTypeDictionary();
+	}
+
+	/**
+	 * Begin a message which must be decodable without the type dictionary (like the message of an "any" field which
+	 * the decoder may keep undecoded and copy into another stream). Until the corresponding {@link #endSelfContained()},
+	 * types are encoded without the dictionary.
+	 */
+	void beginSelfContained() {
+		selfContained++;
+	}
+
+	/**
+	 * End a self contained message.
+	 * 
+	 * @see #beginSelfContained()
+	 */
+	void endSelfContained() {
+		selfContained--;
+	}
+
+	/**
+	 * 
+	 * @param type the type
+	 * @return the id of the type in the type dictionary of this encoder or 0 if the type is not defined yet
+	 * @see ProtobufCodingScheme.Builder#setTypeDictionary(boolean)
+	 */
+	int getTypeId(ObjectType type) {
+		Integer id=typeIds==null?null:typeIds.get(type.getUrn());
+		return id==null?0:id;
+	}
+	
+	/**
+	 * Define the type in the type dictionary of this encoder.
+	 * 
+	 * @param type the type to define
+	 * @return the id of the type
+	 */
+	int defineTypeId(ObjectType type) {
+		if(typeIds==null) {
+			typeIds=new HashMap<>();
+			types=new ArrayList<>();
+		}
+		types.add(type.getUrn());
+		typeIds.put(type.getUrn(), types.size());
+		return types.size();
+	}
+
+	/**
+	 * Encode the object and write it out. If encoding or writing fails, the object is discarded (including the
+	 * types defined in the object) and the encoder can be used for the next object.
+	 * 
+	 * @param o the object to encode
+	 * @param output the output the encoded object is written to
+	 * @throws BaseException if encoding or writing fails
+	 */
+	private void write(Object o,Output output) throws BaseException {
+		if(buffer==null) {
+			throw new BaseException(BaseException.BAD_REQUEST,"Encoder is closed");
+		}
+		int definedTypes=types==null?0:types.size();
+		try {
 			AbstractCodec codec=scheme.getClassCodec(context, scheme.getRootType(context,o.getClass()));
 			if(codec==null) {
 				PrimitiveTypeCodec primitiveTypeCodec=scheme.getPrimitiveTypeCodec(o.getClass());
@@ -85,9 +208,30 @@ class ProtobufEncoder extends DefaultCodingSupport implements Encoder, AccessCon
 			} else {
 				codec.encode(this, buffer, o);
 			}
-			flush();
+			output.write(buffer);
+		} catch(BaseException|RuntimeException e) {
+			discard(definedTypes);
+			throw e;
+		} catch(IOException e) {
+			discard(definedTypes);
+			BaseException.throwException(e);
 		}
-		return this;
+	}
+
+	/**
+	 * Discard the partially encoded or written object (including the types defined in the object).
+	 * 
+	 * @param definedTypes the number of types defined before the object
+	 */
+	private void discard(int definedTypes) {
+		buffer.reset();
+		while(types!=null&&types.size()>definedTypes) {
+			typeIds.remove(types.remove(types.size()-1));
+		}
+	}
+
+	private interface Output {
+		public void write(ProtobufBuffer buffer) throws IOException;
 	}
 
 	@Override
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2024 Not Alexa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package not.alexa.netobjects.coding.protobuf;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import not.alexa.netobjects.coding.protobuf.ProtobufBuffer.ProtobufListener;
+
+/**
+ * Streaming counterpart of {@link ProtobufBuffer} for decoding. The stream is read through a window
+ * which is refilled whenever necessary. Top level fields are passed to the listener as soon as they
+ * are read. Only length delimited fields (sub messages, strings, byte arrays) need to fit into the window
+ * which grows temporarily if a field is larger than the window.
+ * <br>The byte array passed to {@link ProtobufListener#consume(int, byte[], int, int)} is the window itself
+ * and is reused afterwards. Listeners must copy the content if it should be retained.
+ *
+ * @author notalexa
+ */
+class ProtobufStream {
+	private final InputStream stream;
+	private final int windowSize;
+	private byte[] window;
+	private int offset;
+	private int len;
+	private long position;
+	private boolean eof;
+
+	private final ByteBuffer source;
+
+	ProtobufStream(InputStream stream,int windowSize) {
+		this(stream,windowSize,null);
+	}
+
+	/**
+	 * 
+	 * @param stream the stream to read from
+	 * @param windowSize the size of the window
+	 * @param source if not {@code null}, the (read only) byte buffer the stream reads from (beginning at the current position of the
+	 * byte buffer). In this case, content is shared with the byte buffer instead of copying it.
+	 * @see #share(byte[], int, int)
+	 */
+	ProtobufStream(InputStream stream,int windowSize,ByteBuffer source) {
+		this.stream=stream;
+		this.windowSize=Math.max(16,windowSize);
+		this.window=new byte[this.windowSize];
+		this.source=source;
+	}
+
+	/**
+	 * The window is reused and content passed to a listener is valid only during the call. This method returns a
+	 * stable representation of the content, which is a slice of the source byte buffer if the stream reads from
+	 * a byte buffer and a copy otherwise.
+	 * 
+	 * @param value the array passed to the listener
+	 * @param offset the offset passed to the listener
+	 * @param len the length passed to the listener
+	 * @return a stable representation of the content
+	 */
+	public ByteBuffer share(byte[] value,int offset,int len) {
+		if(value==window&&source!=null) {
+			return slice(position+offset,len);
+		}
+		return ByteBuffer.wrap(Arrays.copyOfRange(value, offset, offset+len));
+	}
+
+	/**
+	 * 
+	 * @param start the position of the content in the stream
+	 * @param len the length of the content
+	 * @return the content as a slice of the source
+	 */
+	private ByteBuffer slice(long start,int len) {
+		int begin=source.position()+(int)start;
+		ByteBuffer slice=source.duplicate();
+		((Buffer)slice).limit(begin+len);
+		((Buffer)slice).position(begin);
+		return slice.slice();
+	}
+
+	/**
+	 * Consume the stream until the end.
+	 *
+	 * @param <T> the type of the listener
+	 * @param listener the listener receiving the fields
+	 * @return the listener
+	 */
+	public <T extends ProtobufListener> T consume(T listener) {
+		try {
+			while(fill(1)>0) {
+				int tag=(int)readLong();
+				switch(tag&0x7) {
+				case 0: listener.consume(tag>>3, readLong());
+					break;
+				case 1: require(8);
+					listener.consumeFixed64(tag>>3, readFixed64());
+					break;
+				case 5: require(4);
+					listener.consume(tag>>3, readFixed32());
+					break;
+				case 2: int len=(int)readLong();
+					if(len<0) {
+						throw new IOException("Illegal length "+len);
+					}
+					require(len);
+					listener.consume(tag>>3, window, offset,len);
+					offset+=len;
+					break;
+				default: throw new IOException("Illegal wire type "+(tag&0x7));
+				}
+			}
+			listener.done();
+		} catch(IOException e) {
+			listener.onError((int)(position+offset),e);
+		}
+		return listener;
+	}
+
+	/**
+	 * 
+	 * @return {@code true} if the stream has more content. The method blocks until at least one byte is available.
+	 * @throws IOException if reading fails
+	 */
+	public boolean hasRemaining() throws IOException {
+		return fill(1)>0;
+	}
+
+	/**
+	 * Read a length delimited message (a varint length prefix followed by the message). The message
+	 * is read completely into a (newly allocated) buffer.
+	 *
+	 * @return a buffer containing the next message
+	 * @throws IOException if reading fails or the stream doesn't contain a complete message
+	 * @see ProtobufBuffer#writeDelimitedTo(java.io.OutputStream)
+	 */
+	public ProtobufBuffer readDelimited() throws IOException {
+		int len=readLength();
+		require(len);
+		ProtobufBuffer message=new ProtobufBuffer(Arrays.copyOfRange(window, offset, offset+len));
+		offset+=len;
+		return message;
+	}
+
+	/**
+	 * Read a length delimited message without copying it. The stream must read from a source (see {@link #ProtobufStream(InputStream, int, ByteBuffer)}).
+	 * 
+	 * @return a slice of the source containing the next message
+	 * @throws IOException if reading fails or the stream doesn't contain a complete message
+	 * @see #readDelimited()
+	 */
+	public ByteBuffer sliceDelimited() throws IOException {
+		int len=readLength();
+		long start=position+offset;
+		skip(len);
+		return slice(start,len);
+	}
+
+	private int readLength() throws IOException {
+		int len=(int)readLong();
+		if(len<0) {
+			throw new IOException("Illegal length "+len);
+		}
+		return len;
+	}
+
+	/**
+	 * Skip <code>n</code> bytes without reading them into the window.
+	 * 
+	 * @param n the number of bytes to skip
+	 * @throws IOException if reading fails or the stream ends before
+	 */
+	private void skip(long n) throws IOException {
+		int available=len-offset;
+		if(n<=available) {
+			offset+=n;
+			return;
+		}
+		n-=available;
+		position+=len;
+		offset=len=0;
+		while(n>0) {
+			long skipped=stream.skip(n);
+			if(skipped<=0) {
+				if(stream.read()<0) {
+					throw new EOFException();
+				}
+				skipped=1;
+			}
+			position+=skipped;
+			n-=skipped;
+		}
+	}
+
+	/**
+	 * Make sure that <code>n</code> bytes are available in the window. The window is compacted
+	 * (and resized if necessary) before reading from the stream.
+	 *
+	 * @param n the number of requested bytes
+	 * @return the number of available bytes which is less than <code>n</code> only at the end of the stream
+	 * @throws IOException if reading fails
+	 */
+	private int fill(int n) throws IOException {
+		int available=len-offset;
+		if(available>=n||eof) {
+			return available;
+		}
+		if(offset>0||window.length<n) {
+			byte[] target=window;
+			if(window.length<n) {
+				target=new byte[n];
+			} else if(window.length>windowSize&&n<=windowSize) {
+				// Release the window enlarged for a large field
+				target=new byte[windowSize];
+			}
+			System.arraycopy(window, offset, target, 0, available);
+			position+=offset;
+			window=target;
+			offset=0;
+			len=available;
+		}
+		while(len<n) {
+			int r=stream.read(window,len,window.length-len);
+			if(r<0) {
+				eof=true;
+				break;
+			}
+			len+=r;
+		}
+		return len-offset;
+	}
+
+	private void require(int n) throws IOException {
+		if(fill(n)<n) {
+			throw new EOFException();
+		}
+	}
+
+	public int readFixed32() {
+		int ret=((window[offset+3]&0xff)<<24)
+				|((window[offset+2]&0xff)<<16)
+				|((window[offset+1]&0xff)<<8)
+				|((window[offset]&0xff));
+		offset+=4;
+		return ret;
+	}
+
+	public long readFixed64() {
+		long ret=
+				((window[offset+7]&0xffL)<<56)
+				|((window[offset+6]&0xffL)<<48)
+				|((window[offset+5]&0xffL)<<40)
+				|((window[offset+4]&0xffL)<<32)
+				|((window[offset+3]&0xffL)<<24)
+				|((window[offset+2]&0xffL)<<16)
+				|((window[offset+1]&0xffL)<<8)
+				|((window[offset]&0xffL));
+		offset+=8;
+		return ret;
+	}
+
+	public long readLong() throws IOException {
+		long accu=0;
+		int shift=0;
+		while(shift<64) {
+			if(offset>=len) {
+				// Don't read ahead: The stream may block otherwise.
+				require(1);
+			}
+			byte b=window[offset++];
+			accu|=((long)(b&0x7f)<<shift);
+			if(b>=0) {
+				return accu;
+			}
+			shift+=7;
+		}
+		throw new IOException("Malformed varint");
+	}
+}
@@ -44,6 +44,7 @@ import not.alexa.netobjects.types.PrimitiveTypeDefinition;
 import not.alexa.netobjects.types.TypeDefinition;
 import not.alexa.netobjects.types.access.Access;
 import not.alexa.netobjects.types.access.AccessContext;
+import not.alexa.netobjects.types.access.ArrayTypeAccess.Presizable;
 import not.alexa.netobjects.types.access.DefaultAccessibleObject;
 import not.alexa.netobjects.types.access.RuntimeInfo;
 
@@ -283,7 +284,11 @@ class YamlDecoder implements Decoder {
 	    	    	if(inline) {
     	    			Field[] fields=componentAccess.getFields();
     	    			AccessibleObject v;
-	    	    		for(Map.Entry<Token,Token> entry:e.getMapArray()) {
+    	    			List<Map.Entry<Token,Token>> entries=e.getMapArray();
+    	    			if(array instanceof Presizable) {
+    	    				((Presizable)array).expect(entries.size());
+    	    			}
+	    	    		for(Map.Entry<Token,Token> entry:entries) {
 	    	    			AccessibleObject inlineObject=componentAccess.newAccessible(this);
                 			v=getChild().init("key",componentAccess.getFieldAccess(fields[0])).decode(entry.getKey());
                 			inlineObject.setField(this,fields[0], v);
@@ -291,8 +296,14 @@ class YamlDecoder implements Decoder {
                 			inlineObject.setField(this,fields[1], v);
 	    	    			array.add(inlineObject);
 	    	    		}
-	    	    	} else for(Token c:e.getArray()) {
-	    	    		array.add(getChild().init(fieldName,componentAccess).decode(c));
+	    	    	} else {
+	    	    		List<Token> elements=e.getArray();
+	    	    		if(array instanceof Presizable) {
+	    	    			((Presizable)array).expect(elements.size());
+	    	    		}
+	    	    		for(Token c:elements) {
+	    	    			array.add(getChild().init(fieldName,componentAccess).decode(c));
+	    	    		}
 	    	    	}
 	    	    	return array;
 	    	    case PrimitiveType:
@@ -84,7 +84,18 @@ public interface AccessibleObject extends TypedObject {
 			default: throw new BaseException(BaseException.BAD_REQUEST, getType()+": Type "+f.getType()+" is neither primitiv nor an enumeration type.");
 		}
 	}
-	
+
+	/**
+	 * Optimization method. If fields of this object (which must be of type {@link Flavour#ClassType}) can be set directly on the underlying
+	 * (java) object using the primitive setters of the access (for example {@link Access#setInt(AccessContext, Object, Field, int)}), this
+	 * object is returned. Objects which need to intercept field assignments (because construction is deferred for example) return <code>null</code>.
+	 *
+	 * @return the object to set primitive fields on or <code>null</code> if {@link #setField(AccessContext, Field, AccessibleObject)} must be used
+	 */
+	public default Object getDirectAccessObject() {
+		return null;
+	}
+
 	/**
 	 * Retrieve an object representing the given method on this object (which must be of type {@link Flavour#ClassType} or {@link Flavour#InterfaceType}).
 	 * Once retrieved, the method can be invoked using the {@link #call(Context, AccessibleObject...)} method with appropriate arguments.
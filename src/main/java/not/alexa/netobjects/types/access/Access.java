@@ -144,6 +144,148 @@ public interface Access extends StrongRefPool {
 		throw new BaseException(BaseException.BAD_REQUEST, "Field "+f.getName()+" is unknown in "+getType());
 	}
 
+	/**
+	 * Primitive field access. If the field is represented by a primitive java type, the value can be read and written
+	 * without boxing using the methods <code>get&lt;Type&gt;</code> and <code>set&lt;Type&gt;</code> with the returned type.
+	 * The default implementation returns {@code null} (and the primitive methods box the value).
+	 * 
+	 * @param f the field
+	 * @return the primitive java type of the field or {@code null} if the field is not primitive (or primitive access is not supported)
+	 */
+	public default Class<?> getPrimitiveFieldType(Field f) {
+		return null;
+	}
+
+	/**
+	 * 
+	 * @param context the access context
+	 * @param o the object
+	 * @param f the field
+	 * @return the value of the field
+	 * @throws BaseException if an error occurs
+	 * @see #getPrimitiveFieldType(Field)
+	 */
+	public default int getInt(AccessContext context,Object o,Field f) throws BaseException {
+		return ((Number)getField(context,o,f)).intValue();
+	}
+
+	/**
+	 * 
+	 * @param context the access context
+	 * @param o the object
+	 * @param f the field
+	 * @param v the new value
+	 * @throws BaseException if an error occurs
+	 * @see #getPrimitiveFieldType(Field)
+	 */
+	public default void setInt(AccessContext context,Object o,Field f,int v) throws BaseException {
+		setField(context,o,f,v);
+	}
+
+	/**
+	 * 
+	 * @param context the access context
+	 * @param o the object
+	 * @param f the field
+	 * @return the value of the field
+	 * @throws BaseException if an error occurs
+	 * @see #getPrimitiveFieldType(Field)
+	 */
+	public default long getLong(AccessContext context,Object o,Field f) throws BaseException {
+		return ((Number)getField(context,o,f)).longValue();
+	}
+
+	/**
+	 * 
+	 * @param context the access context
+	 * @param o the object
+	 * @param f the field
+	 * @param v the new value
+	 * @throws BaseException if an error occurs
+	 * @see #getPrimitiveFieldType(Field)
+	 */
+	public default void setLong(AccessContext context,Object o,Field f,long v) throws BaseException {
+		setField(context,o,f,v);
+	}
+
+	/**
+	 * 
+	 * @param context the access context
+	 * @param o the object
+	 * @param f the field
+	 * @return the value of the field
+	 * @throws BaseException if an error occurs
+	 * @see #getPrimitiveFieldType(Field)
+	 */
+	public default float getFloat(AccessContext context,Object o,Field f) throws BaseException {
+		return ((Number)getField(context,o,f)).floatValue();
+	}
+
+	/**
+	 * 
+	 * @param context the access context
+	 * @param o the object
+	 * @param f the field
+	 * @param v the new value
+	 * @throws BaseException if an error occurs
+	 * @see #getPrimitiveFieldType(Field)
+	 */
+	public default void setFloat(AccessContext context,Object o,Field f,float v) throws BaseException {
+		setField(context,o,f,v);
+	}
+
+	/**
+	 * 
+	 * @param context the access context
+	 * @param o the object
+	 * @param f the field
+	 * @return the value of the field
+	 * @throws BaseException if an error occurs
+	 * @see #getPrimitiveFieldType(Field)
+	 */
+	public default double getDouble(AccessContext context,Object o,Field f) throws BaseException {
+		return ((Number)getField(context,o,f)).doubleValue();
+	}
+
+	/**
+	 * 
+	 * @param context the access context
+	 * @param o the object
+	 * @param f the field
+	 * @param v the new value
+	 * @throws BaseException if an error occurs
+	 * @see #getPrimitiveFieldType(Field)
+	 */
+	public default void setDouble(AccessContext context,Object o,Field f,double v) throws BaseException {
+		setField(context,o,f,v);
+	}
+
+	/**
+	 * 
+	 * @param context the access context
+	 * @param o the object
+	 * @param f the field
+	 * @return the value of the field
+	 * @throws BaseException if an error occurs
+	 * @see #getPrimitiveFieldType(Field)
+	 */
+	public default boolean getBoolean(AccessContext context,Object o,Field f) throws BaseException {
+		return (Boolean)getField(context,o,f);
+	}
+
+	/**
+	 * 
+	 * @param context the access context
+	 * @param o the object
+	 * @param f the field
+	 * @param v the new value
+	 * @throws BaseException if an error occurs
+	 * @see #getPrimitiveFieldType(Field)
+	 */
+	public default void setBoolean(AccessContext context,Object o,Field f,boolean v) throws BaseException {
+		setField(context,o,f,v);
+	}
+
 	/**
 	 * Create a new instance for the given type
 	 * 
@@ -22,7 +22,9 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Map;
 import java.util.Set;
 
@@ -86,6 +88,8 @@ public class ArrayTypeAccess extends Access.AbstractAccess implements Access {
 	private TypeDefinition type;
 	private Access componentAccess;
 	private Class<?> targetClass;
+	private boolean primitive;
+	private boolean collecting;
 
 	/**
 	 * Create access to the given type definition. The type of the component access and the component type of the array type must match.
@@ -98,6 +102,9 @@ public class ArrayTypeAccess extends Access.AbstractAccess implements Access {
 		this.type=type;
 		this.componentAccess=componentAccess;
 		this.targetClass=targetClass;
+		primitive=targetClass.isArray()&&targetClass.getComponentType().isPrimitive();
+		collecting=!primitive&&(targetClass.isArray()||List.class.isAssignableFrom(targetClass)
+				||Set.class.isAssignableFrom(targetClass)||Map.class.isAssignableFrom(targetClass));
 	}
     
     @Override
@@ -116,8 +123,50 @@ public class ArrayTypeAccess extends Access.AbstractAccess implements Access {
 	 */
 	@Override
 	public AccessibleObject newAccessible(AccessContext context) throws BaseException {
+		if(primitive) {
+			return new PrimitiveAccessibleArray(context);
+		} else if(collecting) {
+			if(targetClass.isArray()||targetClass.isInterface()) {
+				return new CollectingArray(context,null);
+			}
+			Object target=newTarget(0);
+			if(target!=null) {
+				return new CollectingArray(context,target);
+			}
+		}
 		return new AccessibleArray(context);
 	}
+
+	/**
+	 * Create a new (empty) instance of the (collection or map) target class.
+	 * 
+	 * @param capacity the expected number of elements
+	 * @return the new instance or <code>null</code> if the target class cannot be instantiated
+	 */
+	@SuppressWarnings("unchecked")
+	private Object newTarget(int capacity) {
+		if(targetClass.isInterface()) {
+			if(List.class.isAssignableFrom(targetClass)) {
+				return new ArrayList<Object>(capacity);
+			} else if(Set.class.isAssignableFrom(targetClass)) {
+				return new HashSet<Object>(hashCapacity(capacity));
+			} else {
+				return new HashMap<Object,Object>(hashCapacity(capacity));
+			}
+		} else try {
+			Object target=targetClass.newInstance();
+			if(target instanceof ArrayList) {
+				((ArrayList<Object>)target).ensureCapacity(capacity);
+			}
+			return target;
+		} catch(Throwable t) {
+			return Map.class.isAssignableFrom(targetClass)?new HashMap<Object,Object>(hashCapacity(capacity)):null;
+		}
+	}
+
+	private static int hashCapacity(int capacity) {
+		return Math.max(16,(int)(capacity/0.75f)+1);
+	}
 	
 	/**
 	 * Make a new accessible object. The {@link AccessibleObject#getAssignable()} method returns an object which can be casted to {@link #targetClass}.
@@ -125,6 +174,9 @@ public class ArrayTypeAccess extends Access.AbstractAccess implements Access {
 	 */
 	@Override
 	public AccessibleObject makeAccessible(AccessContext context,Object o) throws BaseException {
+		if(primitive&&targetClass.isInstance(o)) {
+			return new PrimitiveAccessibleArray(context,o);
+		}
 		return new AccessibleArray(context,o);
 	}
 
@@ -147,6 +199,7 @@ public class ArrayTypeAccess extends Access.AbstractAccess implements Access {
 		private List<AccessibleObject> data;
 		private AccessContext context;
 		public AccessibleArray(AccessContext context) {
+			this.context=context;
 			this.data=new ArrayList<AccessibleObject>();
 		}
 		
@@ -229,4 +282,347 @@ public class ArrayTypeAccess extends Access.AbstractAccess implements Access {
 			return Sequence.<AccessibleObject>from(data.iterator());
 		}
 	}
+
+	/**
+	 * Accessible arrays implementing this interface accept a hint about the number of elements
+	 * added next. Decoders knowing the length of an array in advance (for example from the
+	 * length of a packed encoding) should announce it to avoid growing (and copying) the target.
+	 *
+	 * @author notalexa
+	 *
+	 */
+	public interface Presizable {
+		/**
+		 * Announce that (at least) the given number of elements will be added to this array.
+		 *
+		 * @param count the number of elements expected
+		 */
+		public void expect(int count);
+	}
+
+	/**
+	 * Accessible object for arrays with a non primitive component type building the target directly. Added
+	 * elements are converted immediately and written into the target collection or map (or into an array of the target component
+	 * type growing geometrically).
+	 *
+	 * @author notalexa
+	 *
+	 */
+	private class CollectingArray implements AccessibleObject,Presizable {
+		private static final int INITIAL_CAPACITY=16;
+		private final AccessContext context;
+		/**
+		 * The elements if the target class is an array.
+		 */
+		private Object[] elements;
+		private int size;
+		/**
+		 * The target collection or map (created on demand if the target class is an interface).
+		 */
+		private Object target;
+		/**
+		 * If set, the target (or {@link #elements}) is visible outside of this object and must be copied before it's modified.
+		 */
+		private boolean shared;
+
+		private CollectingArray(AccessContext context,Object target) {
+			this.context=context;
+			this.target=target;
+			if(targetClass.isArray()) {
+				elements=(Object[])Array.newInstance(targetClass.getComponentType(),0);
+			}
+		}
+
+		@Override
+		public TypeDefinition getType() {
+			return ArrayTypeAccess.this.getType();
+		}
+
+		private void resize(int capacity) {
+			elements=Arrays.copyOf(elements,capacity);
+			shared=false;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public void expect(int count) {
+			if(count<=0) {
+				return;
+			} else if(elements!=null) {
+				if(shared||elements.length<size+count) {
+					resize(Math.max(elements.length,size+count));
+				}
+			} else if(target==null) {
+				target=newTarget(count);
+			} else if(target instanceof ArrayList&&!shared) {
+				ArrayList<Object> list=(ArrayList<Object>)target;
+				list.ensureCapacity(list.size()+count);
+			}
+		}
+
+		/**
+		 * 
+		 * @return the target to add elements to
+		 */
+		@SuppressWarnings("unchecked")
+		private Object modifiableTarget() {
+			if(target==null) {
+				target=newTarget(0);
+			} else if(shared) {
+				Object copy=newTarget(0);
+				if(copy instanceof Map) {
+					((Map<Object,Object>)copy).putAll((Map<Object,Object>)target);
+				} else {
+					((Collection<Object>)copy).addAll((Collection<Object>)target);
+				}
+				target=copy;
+				shared=false;
+			}
+			return target;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public void add(AccessibleObject o) throws BaseException {
+			Object v=componentAccess.getObject(context,o);
+			if(elements!=null) {
+				if(shared||size==elements.length) {
+					resize(size==elements.length?Math.max(INITIAL_CAPACITY,elements.length<<1):elements.length);
+				}
+				try {
+					elements[size]=v;
+				} catch(ArrayStoreException e) {
+					throw new BaseException(BaseException.BAD_REQUEST,"Illegal value "+v+" for "+targetClass.getComponentType().getName()+" array");
+				}
+				size++;
+			} else {
+				Object target=modifiableTarget();
+				if(target instanceof Map) {
+					Map.Entry<Object,Object> entry=(Map.Entry<Object, Object>)v;
+					((Map<Object,Object>)target).put(entry.getKey(),entry.getValue());
+				} else {
+					((Collection<Object>)target).add(v);
+				}
+			}
+		}
+
+		@Override
+		public Object getObject() {
+			if(elements!=null) {
+				if(size==elements.length) {
+					shared=true;
+					return elements;
+				}
+				return Arrays.copyOf(elements,size);
+			} else {
+				Object target=this.target==null?newTarget(0):this.target;
+				this.target=target;
+				shared=true;
+				return target;
+			}
+		}
+
+		@Override
+		public Sequence<AccessibleObject> asSequence() {
+			Iterator<?> iterator;
+			try {
+				iterator=elements!=null?Arrays.asList(elements).subList(0,size).iterator():canonicalize(getObject()).iterator();
+			} catch(BaseException e) {
+				return e.throwRuntimeException();
+			}
+			return Sequence.<AccessibleObject>from(new Iterator<AccessibleObject>() {
+				@Override
+				public boolean hasNext() {
+					return iterator.hasNext();
+				}
+
+				@Override
+				public AccessibleObject next() {
+					try {
+						return componentAccess.makeAccessible(context,iterator.next());
+					} catch(BaseException e) {
+						return e.throwRuntimeException();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Accessible object for arrays with a primitive component type. The elements are stored in a native array of the
+	 * target class, no wrappers are created while the array is built. Codecs decoding primitive values can add
+	 * them without boxing using {@link #addLong(long)} and {@link #addDouble(double)}.
+	 *
+	 * @author notalexa
+	 *
+	 */
+	public class PrimitiveAccessibleArray implements AccessibleObject,Presizable {
+		private static final int INITIAL_CAPACITY=16;
+		private final AccessContext context;
+		private final Class<?> componentType=targetClass.getComponentType();
+		private Object data;
+		private int size;
+		/**
+		 * If set, {@link #data} is visible outside of this object and must be copied before it's modified.
+		 */
+		private boolean shared;
+
+		private PrimitiveAccessibleArray(AccessContext context) {
+			this.context=context;
+			data=Array.newInstance(componentType,0);
+		}
+
+		private PrimitiveAccessibleArray(AccessContext context,Object data) {
+			this.context=context;
+			this.data=data;
+			size=Array.getLength(data);
+			shared=true;
+		}
+
+		@Override
+		public TypeDefinition getType() {
+			return ArrayTypeAccess.this.getType();
+		}
+
+		/**
+		 *
+		 * @return the number of elements in this array
+		 */
+		public int size() {
+			return size;
+		}
+
+		private void ensureCapacity() {
+			int capacity=Array.getLength(data);
+			if(shared||size==capacity) {
+				resize(size==capacity?Math.max(INITIAL_CAPACITY,capacity<<1):capacity);
+			}
+		}
+
+		private void resize(int capacity) {
+			Object n=Array.newInstance(componentType,capacity);
+			System.arraycopy(data,0,n,0,size);
+			data=n;
+			shared=false;
+		}
+
+		@Override
+		public void expect(int count) {
+			if(count>0&&(shared||Array.getLength(data)<size+count)) {
+				resize(Math.max(Array.getLength(data),size+count));
+			}
+		}
+
+		/**
+		 * Add an integral value to this array. The value is narrowed to the component type, boolean
+		 * components are set to <code>true</code> for non zero values.
+		 *
+		 * @param v the value to add
+		 */
+		public void addLong(long v) {
+			ensureCapacity();
+			if(componentType==int.class) {
+				((int[])data)[size++]=(int)v;
+			} else if(componentType==long.class) {
+				((long[])data)[size++]=v;
+			} else if(componentType==boolean.class) {
+				((boolean[])data)[size++]=v!=0;
+			} else if(componentType==short.class) {
+				((short[])data)[size++]=(short)v;
+			} else if(componentType==byte.class) {
+				((byte[])data)[size++]=(byte)v;
+			} else if(componentType==char.class) {
+				((char[])data)[size++]=(char)v;
+			} else if(componentType==double.class) {
+				((double[])data)[size++]=v;
+			} else {
+				((float[])data)[size++]=v;
+			}
+		}
+
+		/**
+		 * Add a floating point value to this array. For integral component types, the value is
+		 * converted using {@link #addLong(long)}.
+		 *
+		 * @param v the value to add
+		 */
+		public void addDouble(double v) {
+			if(componentType==double.class) {
+				ensureCapacity();
+				((double[])data)[size++]=v;
+			} else if(componentType==float.class) {
+				ensureCapacity();
+				((float[])data)[size++]=(float)v;
+			} else {
+				addLong((long)v);
+			}
+		}
+
+		@Override
+		public void add(AccessibleObject o) throws BaseException {
+			Object v=componentAccess.getObject(context,o);
+			if(v instanceof Double||v instanceof Float) {
+				addDouble(((Number)v).doubleValue());
+			} else if(v instanceof Number) {
+				addLong(((Number)v).longValue());
+			} else if(v instanceof Boolean) {
+				addLong(((Boolean)v)?1:0);
+			} else if(v instanceof Character) {
+				addLong((Character)v);
+			} else {
+				throw new BaseException(BaseException.BAD_REQUEST,"Illegal value "+v+" for "+componentType.getName()+" array");
+			}
+		}
+
+		/**
+		 *
+		 * @param index the index of the element
+		 * @return the (boxed) element
+		 */
+		private Object get(int index) {
+			if(componentType==int.class) {
+				return ((int[])data)[index];
+			} else if(componentType==long.class) {
+				return ((long[])data)[index];
+			} else if(componentType==double.class) {
+				return ((double[])data)[index];
+			} else {
+				return Array.get(data,index);
+			}
+		}
+
+		@Override
+		public Object getObject() {
+			if(size==Array.getLength(data)) {
+				shared=true;
+				return data;
+			}
+			Object val=Array.newInstance(componentType,size);
+			System.arraycopy(data,0,val,0,size);
+			return val;
+		}
+
+		@Override
+		public Sequence<AccessibleObject> asSequence() {
+			return Sequence.<AccessibleObject>from(new Iterator<AccessibleObject>() {
+				int index;
+				@Override
+				public boolean hasNext() {
+					return index<size;
+				}
+
+				@Override
+				public AccessibleObject next() {
+					if(index>=size) {
+						throw new NoSuchElementException();
+					}
+					try {
+						return componentAccess.makeAccessible(context,get(index++));
+					} catch(BaseException e) {
+						return e.throwRuntimeException();
+					}
+				}
+			});
+		}
+	}
 }
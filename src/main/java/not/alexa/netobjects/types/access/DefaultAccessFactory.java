@@ -17,13 +17,14 @@ package not.alexa.netobjects.types.access;
 
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
-import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import not.alexa.netobjects.Adaptable;
 import not.alexa.netobjects.BaseException;
@@ -57,7 +58,8 @@ import not.alexa.netobjects.utils.WeakKeyMap;
  * <ol>
  * <li>If the type has a java class representation, the access class is constructed using the name of the java class with <code>$ClassAccess</code>
  * appended. This class is resolved using the class loader of the referrer or context. The class should be loadable, implement {@link Access} and should contain a constructor with argument {@link AccessFactory}
- * which is called with argument this access factory.
+ * which is called with argument this access factory. Such classes are generated for network objects by the annotation processor
+ * of the <code>processor</code> module (see {@link GeneratedClassAccess}).
  * <li>If additional resolvers are present, each of this resolver is called in the registered order. The first one resolving access is taken.
  * <li>Finally, an {@link AnonymousClassAccess} is created (which creates an error whenever a new instance is requested and resolves fields using
  * this factory) if the access is unknown.
@@ -123,7 +125,15 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
     };
         
     protected AccessResolver[] resolvers;
-    private WeakKeyMap<Class<?>,Reference<RootAccessHolder>> loaded=new WeakKeyMap<>();
+    /**
+     * Root access holders by linked class. Lookups are lock free, holders are created holding the lock of this factory.
+     */
+    private final ClassValue<RootAccessSlot> loaded=new ClassValue<RootAccessSlot>() {
+		@Override
+		protected RootAccessSlot computeValue(Class<?> type) {
+			return new RootAccessSlot();
+		}
+    };
     private WeakKeyMap<TypeLoader,Map<Object,AccessHolder>> loadedTypeMaps=new WeakKeyMap<>();
 
 	public DefaultAccessFactory() {
@@ -157,14 +167,19 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
 	    }
 	}
 
-	protected synchronized AccessHolder resolveHolder(TypeLoader typeLoader,Type javaType) {
+	protected AccessHolder resolveHolder(TypeLoader typeLoader,Type javaType) {
 	    if(javaType!=null) {
             Map<Object,AccessHolder> typeMap=getTypeMap(typeLoader);
             AccessHolder accessHolder=typeMap.get(javaType);
             if(accessHolder==null) {
-                accessHolder=new AccessHolder(typeLoader, getClassAccess(typeLoader.getClassLoader(),typeLoader.getLinkedLocal(javaType),typeLoader.resolveType(javaType)));
-                typeMap.put(javaType,accessHolder);
-                typeMap.put(accessHolder.getAccessClass(),accessHolder);
+            	synchronized(this) {
+            		accessHolder=typeMap.get(javaType);
+            		if(accessHolder==null) {
+            			accessHolder=new AccessHolder(typeLoader, getClassAccess(typeLoader.getClassLoader(),typeLoader.getLinkedLocal(javaType),typeLoader.resolveType(javaType)));
+            			typeMap.put(javaType,accessHolder);
+            			typeMap.put(accessHolder.getAccessClass(),accessHolder);
+            		}
+            	}
             }
             return accessHolder;
 	    }
@@ -180,8 +195,7 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
 	protected Map<Object,AccessHolder> getTypeMap(TypeLoader loader) {
         Map<Object,AccessHolder> typeMap=loadedTypeMaps.get(loader);
         if(typeMap==null) {
-            typeMap=new HashMap<Object, AccessHolder>();
-            loadedTypeMaps.put(loader,typeMap);
+            typeMap=loadedTypeMaps.computeIfAbsent(loader,l->new ConcurrentHashMap<Object, AccessHolder>());
         }
         return typeMap;
 	}
@@ -223,16 +237,21 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
 	    return NULL_CASTER;
 	}
 		
-	protected synchronized RootAccessHolder getClassAccess(ClassLoader classLoader,LinkedLocal localClass,TypeDefinition type) {
+	protected RootAccessHolder getClassAccess(ClassLoader classLoader,LinkedLocal localClass,TypeDefinition type) {
 		if(localClass==null) {
 			return null;
 		} else {
 			Class<?> linked=localClass.asClass();
-		    Reference<RootAccessHolder> access=loaded.get(linked);
-		    RootAccessHolder holder=access==null?null:access.get();
+			RootAccessSlot slot=loaded.get(linked);
+		    RootAccessHolder holder=slot.get();
 		    if(holder==null) {
-		    	holder=localClass.hasParameters()?new ParametrizedRootAccessHolder(linked):new RootAccessHolder(linked);
-		        loaded.put(linked, BackingClassLoader.register(linked,holder));
+		    	synchronized(this) {
+		    		holder=slot.get();
+		    		if(holder==null) {
+		    			holder=localClass.hasParameters()?new ParametrizedRootAccessHolder(linked):new RootAccessHolder(linked);
+		    			slot.ref=BackingClassLoader.register(linked,holder);
+		    		}
+		    	}
 		    }
 		    return holder.forParameters(classLoader,localClass,type);
 		}
@@ -257,9 +276,7 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
 	 * For testing only
 	 */
 	protected int gc() {
-	    int n=loadedTypeMaps.size();
-	    loaded.size();
-	    return n;
+	    return loadedTypeMaps.size();
 	}
 
     @Override
@@ -303,10 +320,22 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
         };
     }
 
+    /**
+     * The (weak) reference to the root access holder of a class.
+     */
+    private static class RootAccessSlot {
+    	volatile Reference<RootAccessHolder> ref;
+
+    	RootAccessHolder get() {
+    		Reference<RootAccessHolder> ref=this.ref;
+    		return ref==null?null:ref.get();
+    	}
+    }
+
     private class RootAccessHolder {
         Class<?> clazz;
-        Access access;
-        RuntimeInfo constructor;
+        volatile Access access;
+        volatile RuntimeInfo constructor;
         
         private RootAccessHolder(Class<?> clazz) {
             this.clazz=clazz;
@@ -314,7 +343,9 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
         
         RootAccessHolder forParameters(ClassLoader classLoader,LinkedLocal localClass,TypeDefinition definition) {
         	if(access==null) {
-        		createAccess(classLoader,localClass, definition);
+        		synchronized(DefaultAccessFactory.this) {
+        			createAccess(classLoader,localClass, definition);
+        		}
         	}
         	return this;
         }
@@ -324,7 +355,10 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
         }
         
         void createAccess(ClassLoader classLoader,LinkedLocal linkedLocal,TypeDefinition type) {
-        	if(access==null) {
+        	if(this.access==null) {
+        		// Access is read without locking: Publish the constructor first and the access last
+        		Access access=null;
+        		RuntimeInfo constructor=null;
                 switch(type.getFlavour()) {
 	                case InterfaceType:if(!ObjectType.createClassType(Object.class).equals(type.getJavaClassType())) {
 	                    	access=new InterfaceAccess(DefaultAccessFactory.this,type,linkedLocal.asClass());
@@ -394,6 +428,8 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
                 if(access==null) {
                 	access=new IllegalAccess(DefaultAccessFactory.this,type);
                 }
+                this.constructor=constructor;
+                this.access=access;
             }
         }
     }
@@ -402,13 +438,13 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
     	private ParametrizedRootAccessHolder(Class<?> clazz/*,Constructor constructor*/) {
     		super(clazz);
     	}
-    	Map<ObjectType,RootAccessHolder> parametrizedRootAccess=new HashMap<>(); 
+    	Map<ObjectType,RootAccessHolder> parametrizedRootAccess=new ConcurrentHashMap<>(); 
         
     	@Override
         RootAccessHolder forParameters(ClassLoader classLoader,LinkedLocal localClass,TypeDefinition type) {
         	RootAccessHolder rootAccess=parametrizedRootAccess.get(localClass.getType());
         	if(rootAccess==null) {
-        		synchronized (this) {
+        		synchronized (DefaultAccessFactory.this) {
         			rootAccess=parametrizedRootAccess.get(localClass.getType());
         			if(rootAccess==null) {
         				rootAccess=new RootAccessHolder(localClass.asClass()/*, localClass.getConstructor()*/).forParameters(classLoader,localClass, type);
@@ -424,7 +460,7 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
     private class AccessHolder {
         WeakReference<TypeLoader> loader;
         RootAccessHolder root;
-        Caster caster;
+        volatile Caster caster;
         
         private AccessHolder(TypeLoader loader,RootAccessHolder root) {
             this.loader=new WeakReference<>(loader);
@@ -481,6 +517,10 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
         }
     }
     
+    /**
+     * Caster for arrays, collections and maps. The copy is created if the first component is modified, unmodified components
+     * before are copied in bulk.
+     */
     private class ArrayCaster extends Caster {
         private Caster componentCaster;
         private ArrayCaster(Caster componentCaster) {
@@ -492,50 +532,85 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
             if(o==null) {
                 return context.getChildContext(null,null);
             }
-            Class<?> clazz=o.getClass();
-            if(clazz.isArray()) {
-                int n=Array.getLength(o);
-                if(n>0) {
-                    Object a=Array.newInstance(clazz.getComponentType(),n);
+            if(o instanceof Object[]) {
+                Object[] s=(Object[])o;
+                if(s.length>0) {
+                    Object[] a=null;
                     CasterContext arrayContext=context.getChildContext(o,CastMode.Unmodified);
-                    for(int i=0;i<n;i++) {
-                        Object s=Array.get(o,i);
-                        CasterContext child=componentCaster.upcast(arrayContext,s);
-                        arrayContext.update(child,a);
-                        Array.set(a, i, child.getResult());
+                    for(int i=0;i<s.length;i++) {
+                    	if(s[i]==null) {
+                    		// Null components are copied
+                    		continue;
+                    	}
+                        CasterContext child=componentCaster.upcast(arrayContext,s[i]);
+                        if(a==null) {
+                            if(child.mode==CastMode.Unmodified) {
+                                continue;
+                            }
+                            a=s.clone();
+                        }
+                        arrayContext.update(child.mode,a);
+                        a[i]=child.getResult();
                     }
                     return arrayContext;
                 }
-            } else if(Collection.class.isAssignableFrom(o.getClass())) {
+            } else if(o instanceof Collection) {
                 Collection<?> c=(Collection<?>)o;
                 if(c.size()>0) {
-                    Collection<Object> a;
-                    try {
-                    	a=(Collection)o.getClass().newInstance();
-                    } catch(Throwable t) {
-                    	a=new ArrayList<>();
-                    }
+                    Collection<Object> a=null;
                     CasterContext arrayContext=context.getChildContext(o,CastMode.Unmodified);
+                    int i=0;
                     for(Object s:c) {
-                        CasterContext child=componentCaster.upcast(arrayContext,s);
-                        arrayContext.update(child,a);
-                        a.add(child.getResult());
+                        CasterContext child=s==null?null:componentCaster.upcast(arrayContext,s);
+                        if(a==null) {
+                            if(child==null||child.mode==CastMode.Unmodified) {
+                            	i++;
+                                continue;
+                            }
+                            try {
+                            	a=(Collection)o.getClass().newInstance();
+                            } catch(Throwable t) {
+                            	a=new ArrayList<>();
+                            }
+                            Iterator<?> unmodified=c.iterator();
+                            while(i-->0) {
+                            	a.add(unmodified.next());
+                            }
+                        }
+                        if(child==null) {
+                        	a.add(null);
+                        } else {
+                        	arrayContext.update(child.mode,a);
+                        	a.add(child.getResult());
+                        }
                     }
                     return arrayContext;
                 }
-            } else if(Map.class.isAssignableFrom(o.getClass())) {
+            } else if(o instanceof Map) {
                 Map<Object,Object> c=(Map<Object,Object>)o;
                 if(c.size()>0) {
-                    Map<Object,Object> a;
-                    try {
-                    	a=(Map<Object,Object>)o.getClass().newInstance();
-                    } catch(Throwable t) {
-                    	a=new HashMap<>();
-                    }
+                    Map<Object,Object> a=null;
                     CasterContext arrayContext=context.getChildContext(o,CastMode.Unmodified);
+                    int i=0;
                     for(Map.Entry<Object,Object> s:c.entrySet()) {
                         CasterContext child=componentCaster.upcast(arrayContext,s);
-                        arrayContext.update(child,a);
+                        if(a==null) {
+                            if(child.mode==CastMode.Unmodified) {
+                            	i++;
+                                continue;
+                            }
+                            try {
+                            	a=(Map<Object,Object>)o.getClass().newInstance();
+                            } catch(Throwable t) {
+                            	a=new HashMap<>();
+                            }
+                            Iterator<Map.Entry<Object,Object>> unmodified=c.entrySet().iterator();
+                            while(i-->0) {
+                            	Map.Entry<Object,Object> t=unmodified.next();
+                            	a.put(t.getKey(),t.getValue());
+                            }
+                        }
+                        arrayContext.update(child.mode,a);
                         Map.Entry<Object,Object> t=(Map.Entry<Object,Object>)child.getResult();
                         a.put(t.getKey(),t.getValue());
                     }
@@ -640,7 +715,7 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
         ClassTypeDefinition classDef;
         RuntimeInfo c;
         Access access;
-        Caster[] fieldCaster;
+        volatile Caster[] fieldCaster;
         public ClassCaster(boolean overloaded,boolean fieldOverlays,ClassTypeDefinition classDef,AccessHolder accessHolder,Access access,Class<?>...dependentClasses) {
         	this.overloaded=overloaded;
         	this.fieldOverlays=fieldOverlays;
@@ -656,6 +731,7 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
         }
         
         private Caster[] resolveFieldCasters(CasterContext context) {
+        	Caster[] fieldCaster=this.fieldCaster;
             if(fieldCaster==null) {
                 Field[] fields=classDef.getFields();
                 fieldCaster=new Caster[fields.length];
@@ -665,6 +741,7 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
                 } catch(BaseException e) {
                 	fieldCaster[i]=NULL_CASTER;
                 }
+                this.fieldCaster=fieldCaster;
             }
             return fieldCaster;
         }
@@ -684,24 +761,30 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
             }
             CasterContext child=context.getChildContext(o,mode);
             if(mode==CastMode.Modified||fieldOverlays) {
-	            AccessibleObject instance=c.newInstance(context).makeAccessible(access);
-	            if(classDef.enableObjectRefs()) {
-	                context.put(o,ref=new Ref(o,mode).update(instance.getObject()));
-	            }
 	            Caster[] fieldCaster=resolveFieldCasters(context);
+	            AccessibleObject instance;
+	            boolean castFields=true;
+	            if(mode==CastMode.Unmodified&&!classDef.enableObjectRefs()) {
+	            	instance=castUnmodified(context,child,o,fieldCaster);
+	            	if(instance==null) {
+	            		// The object is not modified at all
+	            		return child;
+	            	}
+	            	castFields=false;
+	            } else {
+		            instance=c.newInstance(context).makeAccessible(access);
+		            if(classDef.enableObjectRefs()) {
+		                context.put(o,ref=new Ref(o,mode).update(instance.getObject()));
+		            }
+	            }
 	            Field[] fields=classDef.getFields();
 	            for(int j=0;j<2;j++) {
-		            for(int i=0;i<fields.length;i++) {
-		                Object t=access.getField(context,o, fields[i]);
-		                if(t!=null) {
-			                CasterContext cc=fieldCaster[i].upcast(child, t);
-			                instance.setField(context,fields[i], new DefaultAccessibleObject(access.getFieldAccess(fields[i]), cc.getResult()));
-			                child.update(cc,instance.getObject());
-			                if(ref!=null) { 
-			                	ref=ref.update(instance.getObject());
-		                	}
-		                }
-		            }
+	            	if(castFields) {
+			            for(int i=0;i<fields.length;i++) {
+			            	castField(context,child,o,instance,ref,fieldCaster,i);
+			            }
+	            	}
+	            	castFields=true;
 		            if(child.finish(ref)!=CastMode.Unmodified) {
 		                Object finished=instance.getAssignable(context);
 		                if(j==0) {
@@ -719,6 +802,56 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
             }
             return child;
         }
+        
+        /**
+         * Cast the fields of an object which is not modified itself. The copy of the object is created when the first field is modified.
+         * 
+         * @return the (partially initialized) copy or <code>null</code> if no field is modified
+         */
+        private AccessibleObject castUnmodified(CasterContext context,CasterContext child,Object o,Caster[] fieldCaster) throws BaseException {
+            Field[] fields=classDef.getFields();
+            AccessibleObject instance=null;
+            for(int i=0;i<fields.length;i++) {
+            	if(instance!=null) {
+            		castField(context,child,o,instance,null,fieldCaster,i);
+            	} else if(fieldCaster[i].needsCast()) {
+	                Object t=access.getField(context,o,fields[i]);
+	                if(t!=null) {
+	                	CasterContext cc=fieldCaster[i].upcast(child,t);
+	                	if(cc.mode!=CastMode.Unmodified) {
+	                		instance=c.newInstance(context).makeAccessible(access);
+	                		for(int k=0;k<i;k++) {
+	                			Object v=access.getField(context,o,fields[k]);
+	                			if(v!=null) {
+	                				instance.setField(context,fields[k], new DefaultAccessibleObject(access.getFieldAccess(fields[k]), v));
+	                			}
+	                		}
+	                		instance.setField(context,fields[i], new DefaultAccessibleObject(access.getFieldAccess(fields[i]), cc.getResult()));
+	                		child.update(cc.mode,instance.getObject());
+	                	}
+	                }
+            	}
+            }
+            return instance;
+        }
+        
+        private void castField(CasterContext context,CasterContext child,Object o,AccessibleObject instance,Ref ref,Caster[] fieldCaster,int i) throws BaseException {
+        	Field f=classDef.getFields()[i];
+            Object t=access.getField(context,o,f);
+            if(t!=null) {
+            	CastMode mode=CastMode.Unmodified;
+            	if(fieldCaster[i].needsCast()) {
+            		CasterContext cc=fieldCaster[i].upcast(child, t);
+            		t=cc.getResult();
+            		mode=cc.mode;
+            	}
+                instance.setField(context,f, new DefaultAccessibleObject(access.getFieldAccess(f), t));
+                child.update(mode,instance.getObject());
+                if(ref!=null) { 
+                	ref.update(instance.getObject());
+            	}
+            }
+        }
     }
     
     private class CasterContext implements AccessContext {
@@ -764,9 +897,9 @@ public class DefaultAccessFactory extends Adaptable.Default implements  AccessFa
             return referenced.get(o);
         }
         
-        public void update(CasterContext child,Object n) {
-        	if(child.mode!=CastMode.Unmodified) {
-        		mode=child.mode;
+        public void update(CastMode childMode,Object n) {
+        	if(childMode!=CastMode.Unmodified) {
+        		mode=childMode;
         	}
         	if(n!=null) {
         		this.n=n;
@@ -15,10 +15,14 @@
  */
 package not.alexa.netobjects.types.access;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 
 import not.alexa.netobjects.BaseException;
+import not.alexa.netobjects.Context;
 import not.alexa.netobjects.utils.TypeUtils;
 import not.alexa.netobjects.utils.TypeUtils.ResolvedClass;
 
@@ -38,6 +42,9 @@ public final class FieldAccessor {
 	private ResolvedClass type;
 	private Getter getter;
 	private Setter setter;
+	private Class<?> primitiveType;
+	private MethodHandle primitiveGetter;
+	private MethodHandle primitiveSetter;
 	
 	private FieldAccessor(String name) {
 		type=OBJECT_CLASS;
@@ -64,37 +71,10 @@ public final class FieldAccessor {
 		this.type=type;
 		if(getter!=null) {
 			getter.setAccessible(true);
-			switch(RuntimeInfoHelper.methodPrio(0, getter)) {
-    			case 1: this.getter=new Getter() {
-					@Override
-					public Object invoke(AccessContext context, Object o) throws Throwable {
-						return getter.invoke(o);
-					}
-    			};
-    			break;
-    			case 2+0x200: this.getter=new Getter() {
-					@Override
-					public Object invoke(AccessContext context, Object o) throws Throwable {
-						return getter.invoke(o,context.getContext());
-					}
-    			};
-    			break;
-    			case 3+0x200: this.getter=new Getter() {
-					@Override
-					public Object invoke(AccessContext context, Object o) throws Throwable {
-						return getter.invoke(o,context);
-					}
-    			};
-    			break;
-			}
+			this.getter=createGetter(getter);
 		} else if(field!=null) {
 			field.setAccessible(true);
-			this.getter=new Getter() {
-				@Override
-				public Object invoke(AccessContext context, Object o) throws Throwable {
-					return field.get(o);
-				}
-			};
+			this.getter=createGetter(field);
 		}
 		if(this.getter==null) {
 			this.getter=new Getter() {
@@ -106,38 +86,10 @@ public final class FieldAccessor {
 		}
 		if(setter!=null) {
 			setter.setAccessible(true);
-			switch(RuntimeInfoHelper.methodPrio(1, setter)) {
-			case 1: this.setter=new Setter() {
-					@Override
-					public void invoke(AccessContext context, Object o,Object v) throws Throwable {
-						setter.invoke(o,v);
-						
-					}
-    			};
-    			break;
-			case 2+0x200: this.setter=new Setter() {
-					@Override
-					public void invoke(AccessContext context, Object o,Object v) throws Throwable {
-						setter.invoke(o,context.getContext(),v);
-					}
-    			};
-    			break;
-			case 3+0x200: this.setter=new Setter() {
-					@Override
-					public void invoke(AccessContext context, Object o,Object v) throws Throwable {
-						setter.invoke(o,context,v);
-					}
-    			};
-    			break;
-			}
+			this.setter=createSetter(setter);
 		} else if(field!=null) {
 			field.setAccessible(true);
-			this.setter=new Setter() {
-				@Override
-				public void invoke(AccessContext context, Object o,Object v) throws Throwable {
-					field.set(o,v);
-				}
-			};
+			this.setter=createSetter(field);
 		}
 		if(this.setter==null) {
 			this.setter=new Setter() {
@@ -147,6 +99,134 @@ public final class FieldAccessor {
 				}
 			};
 		}
+		Class<?> fieldType=getter!=null?getter.getReturnType():field!=null?field.getType():null;
+		if(fieldType!=null&&fieldType.isPrimitive()) {
+			// Handles without boxing (getters and setters with a context argument use the boxed path)
+			primitiveType=fieldType;
+			if(getter!=null) {
+				primitiveGetter=RuntimeInfoHelper.methodPrio(0, getter)==1?unreflect(getter,fieldType,Object.class):null;
+			} else try {
+				primitiveGetter=MethodHandles.lookup().unreflectGetter(field).asType(MethodType.methodType(fieldType,Object.class));
+			} catch(Throwable t) {
+			}
+			if(setter!=null) {
+				primitiveSetter=RuntimeInfoHelper.methodPrio(1, setter)==1&&setter.getParameterTypes()[0]==fieldType?unreflect(setter,void.class,Object.class,fieldType):null;
+			} else if(field!=null&&field.getType()==fieldType) try {
+				primitiveSetter=MethodHandles.lookup().unreflectSetter(field).asType(MethodType.methodType(void.class,Object.class,fieldType));
+			} catch(Throwable t) {
+			}
+		}
+	}
+
+	/**
+	 * The getters and setters invoke method handles bound once per field. Reflection is used
+	 * if the method handle cannot be created (if access is denied for example).
+	 */
+	private static Getter createGetter(Method getter) {
+		switch(RuntimeInfoHelper.methodPrio(0, getter)) {
+			case 1: {
+				MethodHandle handle=unreflect(getter,Object.class,Object.class);
+				return handle==null?(context,o)->getter.invoke(o):(context,o)->(Object)handle.invokeExact(o);
+			}
+			case 2+0x200: {
+				MethodHandle handle=unreflect(getter,Object.class,Object.class,Context.class);
+				return handle==null?(context,o)->getter.invoke(o,context.getContext()):(context,o)->(Object)handle.invokeExact(o,context.getContext());
+			}
+			case 3+0x200: {
+				MethodHandle handle=unreflect(getter,Object.class,Object.class,AccessContext.class);
+				return handle==null?(context,o)->getter.invoke(o,context):(context,o)->(Object)handle.invokeExact(o,context);
+			}
+		}
+		return null;
+	}
+
+	private static Getter createGetter(Field field) {
+		MethodHandle handle;
+		try {
+			handle=MethodHandles.lookup().unreflectGetter(field).asType(MethodType.methodType(Object.class,Object.class));
+		} catch(Throwable t) {
+			return (context,o)->field.get(o);
+		}
+		return (context,o)->(Object)handle.invokeExact(o);
+	}
+
+	/**
+	 * Method handles don't widen primitive values (reflection does). Values which are not an instance of the wrapper of
+	 * a primitive type are therefore passed using reflection. The value type is {@code null} for non primitive types.
+	 */
+	private static Setter createSetter(Method setter) {
+		Class<?> valueType=wrap(setter.getParameterTypes()[setter.getParameterCount()-1]);
+		switch(RuntimeInfoHelper.methodPrio(1, setter)) {
+			case 1: {
+				MethodHandle handle=unreflect(setter,void.class,Object.class,Object.class);
+				if(handle!=null) {
+					return (context,o,v)->{
+						if(valueType==null||valueType.isInstance(v)) {
+							handle.invokeExact(o,v);
+						} else {
+							setter.invoke(o,v);
+						}
+					};
+				}
+				return (context,o,v)->setter.invoke(o,v);
+			}
+			case 2+0x200: {
+				MethodHandle handle=unreflect(setter,void.class,Object.class,Context.class,Object.class);
+				if(handle!=null) {
+					return (context,o,v)->{
+						if(valueType==null||valueType.isInstance(v)) {
+							handle.invokeExact(o,context.getContext(),v);
+						} else {
+							setter.invoke(o,context.getContext(),v);
+						}
+					};
+				}
+				return (context,o,v)->setter.invoke(o,context.getContext(),v);
+			}
+			case 3+0x200: {
+				MethodHandle handle=unreflect(setter,void.class,Object.class,AccessContext.class,Object.class);
+				if(handle!=null) {
+					return (context,o,v)->{
+						if(valueType==null||valueType.isInstance(v)) {
+							handle.invokeExact(o,context,v);
+						} else {
+							setter.invoke(o,context,v);
+						}
+					};
+				}
+				return (context,o,v)->setter.invoke(o,context,v);
+			}
+		}
+		return null;
+	}
+
+	private static Setter createSetter(Field field) {
+		Class<?> valueType=wrap(field.getType());
+		MethodHandle handle;
+		try {
+			handle=MethodHandles.lookup().unreflectSetter(field).asType(MethodType.methodType(void.class,Object.class,Object.class));
+		} catch(Throwable t) {
+			return (context,o,v)->field.set(o,v);
+		}
+		return (context,o,v)->{
+			if(valueType==null||valueType.isInstance(v)) {
+				handle.invokeExact(o,v);
+			} else {
+				field.set(o,v);
+			}
+		};
+	}
+
+	private static MethodHandle unreflect(Method m,Class<?> returnType,Class<?>...parameterTypes) {
+		try {
+			return MethodHandles.lookup().unreflect(m).asType(MethodType.methodType(returnType,parameterTypes));
+		} catch(Throwable t) {
+			return null;
+		}
+	}
+
+	private static Class<?> wrap(Class<?> type) {
+		return type.isPrimitive()?MethodType.methodType(type).wrap().returnType():null;
 	}
 
     public ResolvedClass getFieldType() {
@@ -170,6 +250,109 @@ public final class FieldAccessor {
 		}
     }
     
+    /**
+     * 
+     * @return the primitive type of the field or {@code null} if the field is not primitive
+     */
+    public Class<?> getPrimitiveType() {
+    	return primitiveType;
+    }
+
+    public int getInt(AccessContext context,Object o) throws BaseException {
+    	if(primitiveType==int.class&&primitiveGetter!=null) try {
+    		return (int)primitiveGetter.invokeExact(o);
+    	} catch(Throwable t) {
+    		return BaseException.throwException(t);
+    	}
+    	return ((Number)get(context,o)).intValue();
+    }
+
+    public void setInt(AccessContext context,Object o,int v) throws BaseException {
+    	if(primitiveType==int.class&&primitiveSetter!=null) try {
+    		primitiveSetter.invokeExact(o,v);
+    		return;
+    	} catch(Throwable t) {
+    		BaseException.throwException(t);
+    	}
+    	set(context,o,v);
+    }
+
+    public long getLong(AccessContext context,Object o) throws BaseException {
+    	if(primitiveType==long.class&&primitiveGetter!=null) try {
+    		return (long)primitiveGetter.invokeExact(o);
+    	} catch(Throwable t) {
+    		return BaseException.throwException(t);
+    	}
+    	return ((Number)get(context,o)).longValue();
+    }
+
+    public void setLong(AccessContext context,Object o,long v) throws BaseException {
+    	if(primitiveType==long.class&&primitiveSetter!=null) try {
+    		primitiveSetter.invokeExact(o,v);
+    		return;
+    	} catch(Throwable t) {
+    		BaseException.throwException(t);
+    	}
+    	set(context,o,v);
+    }
+
+    public float getFloat(AccessContext context,Object o) throws BaseException {
+    	if(primitiveType==float.class&&primitiveGetter!=null) try {
+    		return (float)primitiveGetter.invokeExact(o);
+    	} catch(Throwable t) {
+    		return BaseException.throwException(t);
+    	}
+    	return ((Number)get(context,o)).floatValue();
+    }
+
+    public void setFloat(AccessContext context,Object o,float v) throws BaseException {
+    	if(primitiveType==float.class&&primitiveSetter!=null) try {
+    		primitiveSetter.invokeExact(o,v);
+    		return;
+    	} catch(Throwable t) {
+    		BaseException.throwException(t);
+    	}
+    	set(context,o,v);
+    }
+
+    public double getDouble(AccessContext context,Object o) throws BaseException {
+    	if(primitiveType==double.class&&primitiveGetter!=null) try {
+    		return (double)primitiveGetter.invokeExact(o);
+    	} catch(Throwable t) {
+    		return BaseException.throwException(t);
+    	}
+    	return ((Number)get(context,o)).doubleValue();
+    }
+
+    public void setDouble(AccessContext context,Object o,double v) throws BaseException {
+    	if(primitiveType==double.class&&primitiveSetter!=null) try {
+    		primitiveSetter.invokeExact(o,v);
+    		return;
+    	} catch(Throwable t) {
+    		BaseException.throwException(t);
+    	}
+    	set(context,o,v);
+    }
+
+    public boolean getBoolean(AccessContext context,Object o) throws BaseException {
+    	if(primitiveType==boolean.class&&primitiveGetter!=null) try {
+    		return (boolean)primitiveGetter.invokeExact(o);
+    	} catch(Throwable t) {
+    		return BaseException.throwException(t);
+    	}
+    	return (Boolean)get(context,o);
+    }
+
+    public void setBoolean(AccessContext context,Object o,boolean v) throws BaseException {
+    	if(primitiveType==boolean.class&&primitiveSetter!=null) try {
+    		primitiveSetter.invokeExact(o,v);
+    		return;
+    	} catch(Throwable t) {
+    		BaseException.throwException(t);
+    	}
+    	set(context,o,v);
+    }
+
     public FieldAccessor filter(CodingFilter filter) {
     	return new FieldAccessor(type,filter.filter(getter),filter.filter(setter));
     	
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2024 Not Alexa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package not.alexa.netobjects.types.access;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+
+import not.alexa.netobjects.BaseException;
+import not.alexa.netobjects.types.AccessibleObject;
+import not.alexa.netobjects.types.ClassTypeDefinition;
+import not.alexa.netobjects.types.ClassTypeDefinition.Field;
+import not.alexa.netobjects.types.Flavour;
+import not.alexa.netobjects.types.access.RuntimeInfo.PreAccessible;
+import not.alexa.netobjects.utils.TypeUtils;
+import not.alexa.netobjects.utils.TypeUtils.ClassResolver;
+import not.alexa.netobjects.utils.TypeUtils.ResolvedClass;
+
+/**
+ * Base class of the <code>$ClassAccess</code> classes generated by the annotation processor of the <code>processor</code> module.
+ * The generated class reads and writes the fields of the class directly (or calls the getter and setter methods) and constructs
+ * new instances calling the no argument constructor.
+ * <br>The generated code is addressed by <em>slots</em>, which are the indices of the (java) names passed to the constructor. Type definition
+ * fields are mapped to slots using {@link RuntimeInfo#mapField(Class, String)}. Fields without a slot (because they are not accessible for
+ * the generated code or the runtime info doesn't provide default field access, see {@link RuntimeInfo#isDefaultFieldAccess()}) and write
+ * access on slots without a setter fall back to a {@link ReflectionClassAccess}, which is created on first use only. Fields declared with
+ * a type mediated by a {@link CodingFilter} (like {@code File} for a string) are left to reflection as well. The (generic) types of
+ * slots are resolved from the declared field (or getter) without making any member accessible.
+ *
+ * @author notalexa
+ *
+ */
+public abstract class GeneratedClassAccess extends AbstractClassAccess {
+	private final Class<?> clazz;
+	private final int[] slots;
+	private volatile ReflectionClassAccess reflection;
+
+	/**
+	 *
+	 * @param factory the access factory
+	 * @param clazz the class this access is generated for
+	 * @param classType the type definition of the class
+	 * @param constructor the runtime info of the class
+	 * @param names the java names of the slots
+	 */
+	protected GeneratedClassAccess(AccessFactory factory,Class<?> clazz,ClassTypeDefinition classType,RuntimeInfo constructor,String...names) {
+		super(factory,classType,constructor);
+		this.clazz=clazz;
+		Field[] fields=classType.getFields();
+		slots=new int[fields.length];
+		List<String> slotNames=Arrays.asList(names);
+		for(int i=0;i<slots.length;i++) {
+			int slot=constructor.isDefaultFieldAccess()?slotNames.indexOf(constructor.mapField(clazz, fields[i].getName())):-1;
+			if(slot>=0&&fields[i].getType().getFlavour()==Flavour.PrimitiveType&&isFiltered(names[slot])) {
+				// The coding filter is applied by the reflection based access
+				slot=-1;
+			}
+			slots[i]=slot;
+		}
+	}
+
+	/**
+	 *
+	 * @param name the java name of a slot
+	 * @return {@code true} if the declared type of the field has a coding filter (like {@code File})
+	 */
+	private boolean isFiltered(String name) {
+		java.lang.reflect.Field field=findField(name);
+		return field!=null&&RuntimeInfoHelper.getFilter(field.getType())!=null;
+	}
+
+	/**
+	 *
+	 * @param name the java name of the field
+	 * @return the field declared in the class hierarchy or {@code null} if no such field exists
+	 */
+	private java.lang.reflect.Field findField(String name) {
+		for(Class<?> c=clazz;c!=null;c=c.getSuperclass()) {
+			for(java.lang.reflect.Field field:c.getDeclaredFields()) {
+				if(field.getName().equals(name)) {
+					return field;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 *
+	 * @return a new instance of the class or {@code null} if the class has no accessible no argument constructor
+	 */
+	protected Object create() {
+		return null;
+	}
+
+	/**
+	 * Read the value of the given slot.
+	 *
+	 * @param context the access context
+	 * @param o the object
+	 * @param slot the slot
+	 * @return the value of the slot
+	 * @throws Throwable if the getter throws an exception
+	 */
+	protected abstract Object get(AccessContext context,Object o,int slot) throws Throwable;
+
+	/**
+	 * Write the value of the given slot.
+	 *
+	 * @param context the access context
+	 * @param o the object
+	 * @param slot the slot
+	 * @param v the new value
+	 * @return {@code false} if the slot is read only for the generated code
+	 * @throws Throwable if the setter throws an exception
+	 */
+	protected abstract boolean set(AccessContext context,Object o,int slot,Object v) throws Throwable;
+
+	/**
+	 *
+	 * @return the reflection based access used for fields without a slot
+	 */
+	private ReflectionClassAccess reflection() {
+		ReflectionClassAccess result=reflection;
+		if(result==null) synchronized(this) {
+			result=reflection;
+			if(result==null) {
+				reflection=result=new ReflectionClassAccess(factory,clazz.getClassLoader(),TypeUtils.resolveClass(clazz),classType,constructor);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public ClassLoader getAccessLoader() {
+		return clazz.getClassLoader();
+	}
+
+	@Override
+	protected PreAccessible newInstance(AccessContext context) throws BaseException {
+		if(constructor.isDefaultConstruction(clazz)) {
+			Object o=create();
+			if(o!=null) {
+				return access -> new DefaultAccessibleObject(access, o);
+			}
+		}
+		return super.newInstance(context);
+	}
+
+	@Override
+	public Object getObject(AccessContext context,AccessibleObject o) throws BaseException {
+		Object result=super.getObject(context, o);
+		if(!clazz.isInstance(result)) {
+			result=context.getContext().cast(clazz, o);
+		}
+		return result;
+	}
+
+	@Override
+	protected Object getField(AccessContext context,Object o,int index) throws BaseException {
+		int slot=slots[index];
+		if(slot<0) {
+			return reflection().getField(context, o, index);
+		}
+		try {
+			return get(context,o,slot);
+		} catch(Throwable t) {
+			return BaseException.throwException(t);
+		}
+	}
+
+	@Override
+	protected void setField(AccessContext context,Object o,int index,Object v) throws BaseException {
+		int slot=slots[index];
+		try {
+			if(slot>=0&&set(context,o,slot,v)) {
+				return;
+			}
+		} catch(Throwable t) {
+			BaseException.throwException(t);
+		}
+		reflection().setField(context, o, index, v);
+	}
+
+	@Override
+	protected Access createFieldAccess(Field f) throws BaseException {
+		ResolvedClass fieldClass=slots[f.getIndex()]<0?null:resolveFieldType(f);
+		if(fieldClass==null) {
+			return reflection().createFieldAccess(f);
+		}
+		Access access=createAccess(f.getType(),fieldClass);
+		if(!fieldClass.getResolvedClass().equals(fieldClass.getCodingClass())) {
+			return ReflectionClassAccess.makeCodingAccess(access);
+		}
+		return access;
+	}
+
+	/**
+	 * Resolve the type of a slot. The declared field is preferred, otherwise a getter is searched.
+	 *
+	 * @param f the field
+	 * @return the resolved type of the field or {@code null} if neither the field nor a getter is declared
+	 */
+	private ResolvedClass resolveFieldType(Field f) {
+		String name=constructor.mapField(clazz, f.getName());
+		String s=Character.toUpperCase(name.charAt(0))+name.substring(1);
+		ClassResolver resolver=TypeUtils.resolveClass(clazz).asResolver();
+		java.lang.reflect.Field field=findField(name);
+		if(field!=null) {
+			return resolver.resolve(field);
+		}
+		for(Class<?> c=clazz;c!=null;c=c.getSuperclass()) {
+			for(Method m:c.getDeclaredMethods()) {
+				if(m.getParameterCount()==0&&(m.getName().equals("get"+s)||m.getName().equals("is"+s)||m.getName().equals(name))) {
+					return resolver.resolve(m);
+				}
+			}
+		}
+		return null;
+	}
+}
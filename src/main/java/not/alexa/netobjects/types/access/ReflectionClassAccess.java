@@ -79,6 +79,61 @@ public class ReflectionClassAccess extends AbstractClassAccess {
         fields[index].set(context,o, v);
     }
     
+    @Override
+    public Class<?> getPrimitiveFieldType(Field f) {
+    	return fields[f.getIndex()].getPrimitiveType();
+    }
+
+    @Override
+    public int getInt(AccessContext context,Object o,Field f) throws BaseException {
+    	return fields[f.getIndex()].getInt(context,o);
+    }
+
+    @Override
+    public void setInt(AccessContext context,Object o,Field f,int v) throws BaseException {
+    	fields[f.getIndex()].setInt(context,o,v);
+    }
+
+    @Override
+    public long getLong(AccessContext context,Object o,Field f) throws BaseException {
+    	return fields[f.getIndex()].getLong(context,o);
+    }
+
+    @Override
+    public void setLong(AccessContext context,Object o,Field f,long v) throws BaseException {
+    	fields[f.getIndex()].setLong(context,o,v);
+    }
+
+    @Override
+    public float getFloat(AccessContext context,Object o,Field f) throws BaseException {
+    	return fields[f.getIndex()].getFloat(context,o);
+    }
+
+    @Override
+    public void setFloat(AccessContext context,Object o,Field f,float v) throws BaseException {
+    	fields[f.getIndex()].setFloat(context,o,v);
+    }
+
+    @Override
+    public double getDouble(AccessContext context,Object o,Field f) throws BaseException {
+    	return fields[f.getIndex()].getDouble(context,o);
+    }
+
+    @Override
+    public void setDouble(AccessContext context,Object o,Field f,double v) throws BaseException {
+    	fields[f.getIndex()].setDouble(context,o,v);
+    }
+
+    @Override
+    public boolean getBoolean(AccessContext context,Object o,Field f) throws BaseException {
+    	return fields[f.getIndex()].getBoolean(context,o);
+    }
+
+    @Override
+    public void setBoolean(AccessContext context,Object o,Field f,boolean v) throws BaseException {
+    	fields[f.getIndex()].setBoolean(context,o,v);
+    }
+
     @Override
     public Access createFieldAccess(Field f) throws BaseException {
     	ResolvedClass fieldClass=fields[f.getIndex()].getFieldType();
@@ -89,7 +144,7 @@ public class ReflectionClassAccess extends AbstractClassAccess {
     	return access;
     }
     
-    private static Access makeCodingAccess(Access access) {
+    static Access makeCodingAccess(Access access) {
 		return new DelegatingAccess(access) {
 			public Object getObject(AccessContext context, AccessibleObject o) throws BaseException {
 				return o.getAssignable(context);
@@ -121,7 +121,26 @@ public interface RuntimeInfo {
 
     
     public FieldAccessor createFieldAccess(Resolver resolver,Class<?> clazz,Field f);
-    
+
+    /**
+     *
+     * @return {@code true} if fields are accessed using the default mechanism (getters, setters and fields resolved by name).
+     * Generated access (see {@link GeneratedClassAccess}) is used only in this case.
+     */
+    public default boolean isDefaultFieldAccess() {
+    	return false;
+    }
+
+    /**
+     *
+     * @param clazz the class to construct
+     * @return {@code true} if {@link #newInstance(AccessContext)} is (currently) equivalent to calling the no argument constructor
+     * of the given class. This excludes injection, finish methods, enclosing instances and overlays.
+     */
+    public default boolean isDefaultConstruction(Class<?> clazz) {
+    	return false;
+    }
+
     /**
      * A constructor typically depends on the underlying class. Therefore, if a {@link TypeResolver} would provide a constructor to
      * give hints how to create the instance, this constructor must be stored in the system. This implies a memory leak, since the class
@@ -320,6 +339,16 @@ public interface RuntimeInfo {
 		public FieldAccessor createFieldAccess(Resolver resolver, Class<?> clazz, Field f) {
 			return delegate.createFieldAccess(resolver, clazz, f);
 		}
+
+        @Override
+		public boolean isDefaultFieldAccess() {
+			return delegate.isDefaultFieldAccess();
+		}
+
+        @Override
+		public boolean isDefaultConstruction(Class<?> clazz) {
+			return !type.hasOverlays()&&delegate.isDefaultConstruction(clazz);
+		}
     }
     
     /**
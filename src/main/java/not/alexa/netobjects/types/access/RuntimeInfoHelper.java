@@ -27,6 +27,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import not.alexa.netobjects.BaseException;
 import not.alexa.netobjects.Context;
@@ -40,6 +41,7 @@ import not.alexa.netobjects.types.access.FieldAccessor.Getter;
 import not.alexa.netobjects.types.access.FieldAccessor.Setter;
 import not.alexa.netobjects.types.access.ReflectionClassAccess.Resolver;
 import not.alexa.netobjects.types.access.RuntimeInfo.Provider;
+import not.alexa.netobjects.utils.TypeUtils.ResolvedClass;
 
 /**
  * This class and it's inner classes are not intended for direct usage.
@@ -50,7 +52,7 @@ import not.alexa.netobjects.types.access.RuntimeInfo.Provider;
 class RuntimeInfoHelper {
 	static ReferenceQueue<Class<?>> QUEUE=new ReferenceQueue<>();
 	static private Map<String,Provider> refs=new HashMap<>();
-	static private Map<Class<?>,CodingFilter> filters=new HashMap<Class<?>, CodingFilter>();
+	static private Map<Class<?>,CodingFilter> filters=new ConcurrentHashMap<Class<?>, CodingFilter>();
 	
 	static {
 		addFilter(new FileFilter());
@@ -270,7 +272,19 @@ class RuntimeInfoHelper {
         		}
         	}
         }
-        return new FieldAccessor(name,getter==null?resolver.resolve(field):resolver.resolve(getter),field,getter,setter);
+        ResolvedClass resolvedType=getter==null?resolver.resolve(field):resolver.resolve(getter);
+        FieldAccessor accessor=new FieldAccessor(name,resolvedType,field,getter,setter);
+        if(f.getType().getFlavour()==Flavour.PrimitiveType) {
+        	// Mediate between the coding type and types like File (see ClassAccessInfo.FieldAccessInfo#create)
+        	Class<?> primitiveClassType=f.getType().asClass(resolver.getResolverClass().getClassLoader());
+        	if(!primitiveClassType.isAssignableFrom(resolvedType.getCodingClass())) {
+        		CodingFilter<?,?> filter=resolver.getFilter(resolvedType.getCodingClass());
+        		if(filter!=null) {
+        			accessor=filter.filter(primitiveClassType,accessor);
+        		}
+        	}
+        }
+        return accessor;
     }
 
 	
@@ -299,6 +313,16 @@ class RuntimeInfoHelper {
 	    	return createDefaultFieldAccess(resolver, clazz, f);
 	    }
 
+	    @Override
+	    public boolean isDefaultFieldAccess() {
+	    	return true;
+	    }
+
+	    @Override
+	    public boolean isDefaultConstruction(Class<?> clazz) {
+	    	return this.clazz==clazz&&constructor!=null&&initializerException==null&&enclosingClass==null&&finish==null&&injectors==null;
+	    }
+
 
 		@Override
 		public PreAccessible newInstance(AccessContext context) throws BaseException {
@@ -320,6 +344,11 @@ class RuntimeInfoHelper {
 								return o;
 							}
 
+							@Override
+							public Object getDirectAccessObject() {
+								return o;
+							}
+
 							@Override
 							protected AccessContext getFinishContext() {
 								return context;
@@ -16,6 +16,8 @@
 package not.alexa.netobjects.types.filters;
 
 import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import not.alexa.netobjects.types.access.AccessContext;
@@ -29,6 +31,51 @@ import not.alexa.netobjects.types.access.FieldAccessor.Setter;
  * @author notalexa
  */
 public class PatternFilter implements CodingFilter<Pattern,String> {
+	/**
+	 * The maximum number of compiled patterns kept in the cache.
+	 */
+	public static final int CACHE_SIZE=256;
+	@SuppressWarnings("serial")
+	private static final Map<String,Pattern> CACHE=new LinkedHashMap<String,Pattern>(16,0.75f,true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,Pattern> eldest) {
+			return size()>CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * Compile the given regular expression. Since patterns are immutable, compiled patterns are shared. The
+	 * last {@value #CACHE_SIZE} recently used patterns are cached. The pattern is compiled outside of the cache lock (concurrent
+	 * callers may compile the same expression, but the first pattern inserted is shared).
+	 * 
+	 * @param regex the regular expression to compile
+	 * @return the compiled pattern
+	 */
+	public static Pattern compile(String regex) {
+		Pattern pattern;
+		synchronized(CACHE) {
+			pattern=CACHE.get(regex);
+		}
+		if(pattern==null) {
+			Pattern compiled=Pattern.compile(regex);
+			synchronized(CACHE) {
+				pattern=CACHE.putIfAbsent(regex,compiled);
+			}
+			if(pattern==null) {
+				pattern=compiled;
+			}
+		}
+		return pattern;
+	}
+
+	/**
+	 * Clear the pattern cache.
+	 */
+	static void clearCache() {
+		synchronized(CACHE) {
+			CACHE.clear();
+		}
+	}
 
 	@Override
 	public Class<Pattern> getSourceClass() {
@@ -55,7 +102,7 @@ public class PatternFilter implements CodingFilter<Pattern,String> {
 		return new Setter() {
 			@Override
 			public void invoke(AccessContext context, Object o, Object v) throws Throwable {
-				setter.invoke(context, o, v==null?null:Pattern.compile((String)v));
+				setter.invoke(context, o, v==null?null:compile((String)v));
 			}
 		};
 	}
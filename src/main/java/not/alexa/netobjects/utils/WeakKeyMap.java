@@ -15,9 +15,9 @@
  */
 package not.alexa.netobjects.utils;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 /**
@@ -25,6 +25,7 @@ import java.util.function.Function;
  * being garbage collected. In contrast to the <code>WeakHashMap</code> class two keys
  * are considered as equal if they represent the same object. If a key is garbage collected,
  * the entry is removed from the table.
+ * <br>The map is thread safe. Lookups don't lock (and don't create references).
  *
  * @author notalexa
  *
@@ -33,7 +34,7 @@ import java.util.function.Function;
  * @see WeakHashMap
  */
 public class WeakKeyMap<K, V> {
-    private Map<Key, V> map=new HashMap<Key, V>();
+    private Map<Object, V> map=new ConcurrentHashMap<Object, V>();
 
     public WeakKeyMap() {
     }
@@ -44,8 +45,8 @@ public class WeakKeyMap<K, V> {
      * @param key the key
      * @return the resource for the given key or <code>null</code> if no resource is available
      */
-    public synchronized V get(K key) {
-        return map.get(new Key(key));
+    public V get(K key) {
+        return map.get(new Lookup(key));
     }
     
     /**
@@ -54,14 +55,15 @@ public class WeakKeyMap<K, V> {
      * @param key the key
      * @param resource the resource for the key
      */
-    public synchronized void put(K key,V resource) {
+    public void put(K key,V resource) {
         map.put(new Key(key),resource);
     }
 
     public void putAll(WeakKeyMap<K,V> other) {
     	// Need to create a new ref.
-        for(Map.Entry<Key, V> entry:other.map.entrySet()) {
-            K k=entry.getKey().get();
+        for(Map.Entry<Object, V> entry:other.map.entrySet()) {
+            @SuppressWarnings("unchecked")
+            K k=((Key)entry.getKey()).get();
             V v=entry.getValue();
             if(k!=null&&v!=null) {
                 put(k,v);
@@ -69,12 +71,17 @@ public class WeakKeyMap<K, V> {
         }
     }
     
-    public synchronized V computeIfAbsent(K key,Function<K,V> creator) {
+    public V computeIfAbsent(K key,Function<K,V> creator) {
     	V v=get(key);
     	if(v==null) {
-    		v=creator.apply(key);
-    		if(v!=null) {
-    			put(key,v);
+    		synchronized(this) {
+    			v=get(key);
+    			if(v==null) {
+    				v=creator.apply(key);
+    				if(v!=null) {
+    					put(key,v);
+    				}
+    			}
     		}
     	}
     	return v;
@@ -85,8 +92,8 @@ public class WeakKeyMap<K, V> {
      * 
      * @param key the key
      */
-    public synchronized void remove(K key) {
-        map.remove(new Key(key));
+    public void remove(K key) {
+        map.remove(new Lookup(key));
     }
     
     /**
@@ -94,7 +101,7 @@ public class WeakKeyMap<K, V> {
      * 
      * @return the size of the map (after update)
      */
-    public synchronized int size() {
+    public int size() {
         return map.size();
     }
     
@@ -120,12 +127,41 @@ public class WeakKeyMap<K, V> {
         	if(o==this) {
         		return true;
         	} else if(o instanceof WeakKeyMap.Key) {
-                WeakKeyMap<K,V>.Key k=(WeakKeyMap<K,V>.Key)o;
+                WeakKeyMap<?,?>.Key k=(WeakKeyMap<?,?>.Key)o;
                 return k.get()==get();
+            } else if(o instanceof WeakKeyMap.Lookup) {
+            	Object referent=get();
+            	return referent!=null&&((WeakKeyMap<?,?>.Lookup)o).key==referent;
             } else {
             	// Breaks reflexivity. But this class is only used locally.
             	return false;
             }
         }
     }
+
+    /**
+     * Key used for lookups. Equal to the {@link Key} referencing the same object.
+     */
+    private class Lookup {
+        private final K key;
+        private Lookup(K key) {
+            this.key=key;
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(o instanceof WeakKeyMap.Key) {
+                return ((WeakKeyMap<?,?>.Key)o).get()==key;
+            } else if(o instanceof WeakKeyMap.Lookup) {
+                return ((WeakKeyMap<?,?>.Lookup)o).key==key;
+            } else {
+                return false;
+            }
+        }
+    }
 }
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2024 Not Alexa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package not.alexa.netobjects.coding.protobuf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import not.alexa.netobjects.BaseException;
+import not.alexa.netobjects.Context;
+import not.alexa.netobjects.coding.ByteEncoder;
+import not.alexa.netobjects.coding.Decoder;
+import not.alexa.netobjects.types.ClassTypeDefinition;
+import not.alexa.netobjects.types.Deferred;
+import not.alexa.netobjects.types.InterfaceTypeDefinition;
+import not.alexa.netobjects.types.PrimitiveTypeDefinition;
+import not.alexa.netobjects.types.TypeDefinition;
+
+public class LazyDecodingTest {
+	static final ProtobufCodingScheme SCHEME=ProtobufCodingScheme.DEFAULT_SCHEME.newBuilder().setRootType(Envelope.class).build();
+
+	public LazyDecodingTest() {
+	}
+
+	@Test
+	public void lazyTest() throws BaseException {
+		Context context=Context.createRootContext();
+		Envelope envelope=new Envelope(1,new TextBody("Hello world"),new TextBody("Eager"));
+		byte[] encoded=SCHEME.createEncoder(context).encode(envelope).asBytes();
+		Envelope decoded=SCHEME.createDecoder(context, encoded).decode(Envelope.class);
+		assertEquals(1, decoded.id);
+		// The eager field is decoded, the lazy field is a proxy
+		assertTrue(decoded.eager instanceof TextBody);
+		assertTrue(Proxy.isProxyClass(decoded.body.getClass()));
+		assertFalse(((Deferred<?,?>)decoded.body).isResolved());
+		// The untouched body is copied
+		assertArrayEquals(encoded, SCHEME.createEncoder(context).encode(decoded).asBytes());
+		// First access decodes the body
+		assertEquals("Hello world", decoded.body.getText());
+		assertTrue(((Deferred<?,?>)decoded.body).isResolved());
+		assertArrayEquals(encoded, SCHEME.createEncoder(context).encode(decoded).asBytes());
+	}
+
+	@Test
+	public void copyTest() throws BaseException {
+		Context context=Context.createRootContext();
+		byte[] encoded=SCHEME.createEncoder(context).encode(new Envelope(1,new TextBody("Hello world"),null)).asBytes();
+		// The lazy body doesn't reference the input which may be reused by the caller
+		Envelope decoded=SCHEME.createDecoder(context, encoded).decode(Envelope.class);
+		Arrays.fill(encoded, (byte)0);
+		assertEquals("Hello world", decoded.body.getText());
+		encoded=SCHEME.createEncoder(context).encode(new Envelope(1,new TextBody("Hello world"),null)).asBytes();
+		ByteBuffer buffer=ByteBuffer.allocateDirect(encoded.length).put(encoded);
+		((Buffer)buffer).flip();
+		decoded=SCHEME.createDecoder(context, buffer).decode(Envelope.class);
+		buffer.put(new byte[encoded.length]);
+		assertEquals("Hello world", decoded.body.getText());
+	}
+
+	@Test
+	public void exceptionTest() throws BaseException {
+		Context context=Context.createRootContext();
+		byte[] encoded=SCHEME.createEncoder(context).encode(new Envelope(1,new TextBody(null),null)).asBytes();
+		Envelope decoded=SCHEME.createDecoder(context, encoded).decode(Envelope.class);
+		// Exceptions of the method are passed through
+		try {
+			decoded.body.check();
+			fail();
+		} catch(IllegalArgumentException e) {
+		}
+		// A corrupted body is reported on first access
+		encoded=SCHEME.createEncoder(context).encode(new Envelope(1,new TextBody("Hello world"),null)).asBytes();
+		for(int i=0;i<encoded.length;i++) {
+			if(encoded[i]==11&&encoded[i+1]=='H') {
+				encoded[i]=100;
+			}
+		}
+		decoded=SCHEME.createDecoder(context, encoded).decode(Envelope.class);
+		try {
+			decoded.body.getText();
+			fail();
+		} catch(RuntimeException e) {
+			assertTrue(e.getCause() instanceof BaseException);
+		}
+	}
+
+	@Test
+	public void typeDictionaryTest() throws BaseException {
+		Context context=Context.createRootContext();
+		ProtobufCodingScheme scheme=SCHEME.newBuilder().setTypeDictionary(true).build();
+		// The type of the inner body is encoded without the dictionary, the type of the eager body defines an id
+		Envelope envelope=new Envelope(1,new Wrapper(new TextBody("inner")),new TextBody("eager"));
+		byte[] encoded=scheme.createEncoder(context).encode(envelope).asBytes();
+		Envelope decoded=scheme.createDecoder(context, encoded).decode(Envelope.class);
+		assertEquals("eager", decoded.eager.getText());
+		// The lazy body is self contained and decoded without the dictionary
+		assertTrue(Proxy.isProxyClass(decoded.body.getClass()));
+		assertArrayEquals(encoded, scheme.createEncoder(context).encode(decoded).asBytes());
+		assertEquals("inner", decoded.body.getText());
+		assertArrayEquals(encoded, scheme.createEncoder(context).encode(decoded).asBytes());
+		// The untouched body is copied into a stream with a different dictionary
+		ProtobufCodingScheme delimited=scheme.newBuilder().setDelimited(true).build();
+		decoded=scheme.createDecoder(context, encoded).decode(Envelope.class);
+		Envelope first=new Envelope(2,new TextBody("first"),new Wrapper(new TextBody("wrapped")));
+		byte[] stream=delimited.createEncoder(context).encode(first).encode(decoded).asBytes();
+		try(Decoder decoder=delimited.createDecoder(context, stream)) {
+			assertEquals("first", decoder.decode(Envelope.class).body.getText());
+			Envelope copy=decoder.decode(Envelope.class);
+			assertEquals("inner", copy.body.getText());
+			assertEquals("eager", copy.eager.getText());
+		}
+		// With root type Object, the root is an "any" field itself. Nested (eager) interface fields use the dictionary.
+		ProtobufCodingScheme any=ProtobufCodingScheme.DEFAULT_SCHEME.newBuilder().setDelimited(true).build();
+		ProtobufCodingScheme anyDictionary=any.newBuilder().setTypeDictionary(true).build();
+		ByteEncoder encoder=any.createEncoder(context);
+		ByteEncoder dictionaryEncoder=anyDictionary.createEncoder(context);
+		for(int i=0;i<10;i++) {
+			envelope=new Envelope(i,null,new Wrapper(new TextBody("eager "+i)));
+			encoder.encode(envelope);
+			dictionaryEncoder.encode(envelope);
+		}
+		String plain=new String(encoder.asBytes(),StandardCharsets.ISO_8859_1);
+		String compressed=new String(dictionaryEncoder.asBytes(),StandardCharsets.ISO_8859_1);
+		assertEquals(10, count(plain,Wrapper.class.getName()));
+		assertEquals(10, count(plain,TextBody.class.getName()));
+		assertEquals(1, count(compressed,Wrapper.class.getName()));
+		assertEquals(1, count(compressed,TextBody.class.getName()));
+		try(Decoder decoder=anyDictionary.createDecoder(context, dictionaryEncoder.asBytes())) {
+			for(int i=0;i<10;i++) {
+				assertEquals("eager "+i, decoder.decode(Envelope.class).eager.getText());
+			}
+		}
+		// Lazy bodies are self contained in this case too
+		encoded=anyDictionary.createEncoder(context).encode(new Envelope(1,new Wrapper(new TextBody("inner")),new Wrapper(new TextBody("eager")))).asBytes();
+		decoded=anyDictionary.createDecoder(context, encoded).decode(Envelope.class);
+		assertTrue(Proxy.isProxyClass(decoded.body.getClass()));
+		stream=anyDictionary.createEncoder(context).encode(first).encode(decoded).asBytes();
+		try(Decoder decoder=anyDictionary.createDecoder(context, stream)) {
+			assertEquals("wrapped", decoder.decode(Envelope.class).eager.getText());
+			Envelope copy=decoder.decode(Envelope.class);
+			assertEquals("inner", copy.body.getText());
+			assertEquals("eager", copy.eager.getText());
+		}
+	}
+
+	private static int count(String s,String sub) {
+		int n=0;
+		for(int i=s.indexOf(sub);i>=0;i=s.indexOf(sub,i+1)) {
+			n++;
+		}
+		return n;
+	}
+
+	@Test
+	public void classFieldTest() throws BaseException {
+		Context context=Context.createRootContext();
+		ProtobufCodingScheme scheme=ProtobufCodingScheme.DEFAULT_SCHEME.newBuilder().setRootType(ClassEnvelope.class).build();
+		// The hint requires an interface field
+		try {
+			scheme.createEncoder(context).encode(new ClassEnvelope(new TextBody("Hello world")));
+			fail();
+		} catch(BaseException e) {
+			assertEquals(BaseException.BAD_REQUEST, e.getCode());
+		}
+		try {
+			// Field 1 containing an empty message
+			scheme.createDecoder(context, new byte[] { 10, 0 }).decode(ClassEnvelope.class);
+			fail();
+		} catch(BaseException e) {
+			assertEquals(BaseException.BAD_REQUEST, e.getCode());
+		}
+		assertEquals(1, scheme.prepare(context, ClassEnvelope.class).size());
+	}
+
+	public interface Body {
+		public String getText();
+		public void check();
+	}
+
+	public static class TextBody implements Body {
+		private static ClassTypeDefinition DESCR=new ClassTypeDefinition(TextBody.class);
+		static {
+			DESCR.createBuilder()
+				.createField("text", PrimitiveTypeDefinition.getTypeDescription(String.class)).setOptional(true).build()
+				.build();
+		}
+		public static TypeDefinition getTypeDescription() {
+			return DESCR;
+		}
+		String text;
+
+		public TextBody() {
+		}
+
+		public TextBody(String text) {
+			this.text=text;
+		}
+
+		@Override
+		public String getText() {
+			return text;
+		}
+
+		@Override
+		public void check() {
+			if(text==null) {
+				throw new IllegalArgumentException("No text");
+			}
+		}
+	}
+
+	public static class Wrapper implements Body {
+		private static ClassTypeDefinition DESCR=new ClassTypeDefinition(Wrapper.class);
+		static {
+			DESCR.createBuilder()
+				.createField("inner", new InterfaceTypeDefinition(Body.class)).setOptional(true).build()
+				.build();
+		}
+		public static TypeDefinition getTypeDescription() {
+			return DESCR;
+		}
+		Body inner;
+
+		public Wrapper() {
+		}
+
+		public Wrapper(Body inner) {
+			this.inner=inner;
+		}
+
+		@Override
+		public String getText() {
+			return inner.getText();
+		}
+
+		@Override
+		public void check() {
+			inner.check();
+		}
+	}
+
+	public static class Envelope {
+		private static ClassTypeDefinition DESCR=new ClassTypeDefinition(Envelope.class);
+		static {
+			DESCR.createBuilder()
+				.createField("id", PrimitiveTypeDefinition.getTypeDescription(Integer.TYPE)).setOptional(true).build()
+				.createField("body", new InterfaceTypeDefinition(Body.class)).setOptional(true).addHint("protobuf:lazy").build()
+				.createField("eager", new InterfaceTypeDefinition(Body.class)).setOptional(true).build()
+				.build();
+		}
+		public static TypeDefinition getTypeDescription() {
+			return DESCR;
+		}
+		int id;
+		Body body;
+		Body eager;
+
+		public Envelope() {
+		}
+
+		public Envelope(int id,Body body,Body eager) {
+			this.id=id;
+			this.body=body;
+			this.eager=eager;
+		}
+	}
+
+	public static class ClassEnvelope {
+		private static ClassTypeDefinition DESCR=new ClassTypeDefinition(ClassEnvelope.class);
+		static {
+			DESCR.createBuilder()
+				.createField("body", TextBody.getTypeDescription()).setOptional(true).addHint("protobuf:lazy").build()
+				.build();
+		}
+		public static TypeDefinition getTypeDescription() {
+			return DESCR;
+		}
+		TextBody body;
+
+		public ClassEnvelope() {
+		}
+
+		public ClassEnvelope(TextBody body) {
+			this.body=body;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2024 Not Alexa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package not.alexa.netobjects.coding.protobuf;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import not.alexa.netobjects.types.ArrayTypeDefinition;
+import not.alexa.netobjects.types.ClassTypeDefinition;
+import not.alexa.netobjects.types.PrimitiveTypeDefinition;
+import not.alexa.netobjects.types.TypeDefinition;
+
+public class Message {
+	private static ClassTypeDefinition DESCR=new ClassTypeDefinition(Message.class);
+	static {
+		DESCR.createBuilder()
+			.createField("id", PrimitiveTypeDefinition.getTypeDescription(Integer.TYPE)).setOptional(true).build()
+			.createField("timestamp", PrimitiveTypeDefinition.getTypeDescription(Long.TYPE)).setOptional(true).build()
+			.createField("name", PrimitiveTypeDefinition.getTypeDescription(String.class)).setOptional(true).build()
+			.createField("payload", PrimitiveTypeDefinition.getTypeDescription(String.class)).setOptional(true).build()
+			.createField("child", DESCR).setOptional(true).build()
+			.createField("samples", new ArrayTypeDefinition(PrimitiveTypeDefinition.getTypeDescription(Integer.TYPE))).setOptional(true).build()
+			.build();
+	}
+	public static TypeDefinition getTypeDescription() {
+		return DESCR;
+	}
+	protected int id;
+	protected long timestamp;
+	protected String name;
+	protected String payload;
+	protected Message child;
+	protected int[] samples;
+
+	public Message() {
+	}
+
+	public Message(int id,String name,int payloadLength,Message child) {
+		this.id=id;
+		this.timestamp=86400000l*id;
+		this.name=name;
+		StringBuilder builder=new StringBuilder(payloadLength);
+		for(int i=0;i<payloadLength;i++) {
+			builder.append((char)('a'+i%26));
+		}
+		this.payload=builder.toString();
+		this.child=child;
+		this.samples=new int[] { id, id+1, id+2 };
+	}
+
+	@Override
+	public int hashCode() {
+		return id;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if(obj instanceof Message) {
+			Message other=(Message)obj;
+			return id==other.id&&timestamp==other.timestamp&&Objects.equals(name,other.name)
+					&&Objects.equals(payload,other.payload)&&Objects.equals(child,other.child)
+					&&Arrays.equals(samples,other.samples);
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "Message["+id+", "+name+", "+child+"]";
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2024 Not Alexa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package not.alexa.netobjects.coding.protobuf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import not.alexa.netobjects.BaseException;
+import not.alexa.netobjects.Context;
+import not.alexa.netobjects.coding.CodingScheme;
+import not.alexa.netobjects.types.ArrayTypeDefinition;
+import not.alexa.netobjects.types.ClassTypeDefinition;
+import not.alexa.netobjects.types.PrimitiveTypeDefinition;
+import not.alexa.netobjects.types.TypeDefinition;
+
+public class PackedArrayCodecTest {
+	private static final CodingScheme SCHEME=ProtobufCodingScheme.DEFAULT_SCHEME.newBuilder().setRootType(Numbers.class).build();
+
+	public PackedArrayCodecTest() {
+	}
+
+	@Test
+	public void packedEncodingTest() throws BaseException {
+		Context context=Context.createRootContext();
+		Numbers numbers=new Numbers();
+		numbers.ints=new int[] { 1, 2, 3 };
+		byte[] encoded=SCHEME.createEncoder(context).encode(numbers).asBytes();
+		// Field 1, wire type 2, length 3, elements 1, 2, 3
+		assertArrayEquals(new byte[] { 0x0a, 3, 1, 2, 3}, encoded);
+	}
+
+	@Test
+	public void roundTripTest() throws BaseException {
+		Context context=Context.createRootContext();
+		CodingScheme scheme=SCHEME;
+		Numbers numbers=new Numbers();
+		numbers.ints=new int[] { 0, 1, 300, Integer.MAX_VALUE, -1, Integer.MIN_VALUE };
+		numbers.longs=new long[] { 0, 1, 1l<<20, Integer.MAX_VALUE, 1l<<40, Long.MAX_VALUE, -1, Long.MIN_VALUE };
+		numbers.doubles=new double[] { 0d, 1.5d, -2.25d, Double.MAX_VALUE };
+		numbers.floats=new float[] { 0f, 1.5f, -2.25f };
+		numbers.booleans=new boolean[] { true, false, true };
+		numbers.signed=new int[] { 0, -1, 1, -300, 300 };
+		numbers.fixed=new long[] { 0, -1, 1, Long.MIN_VALUE };
+		numbers.list=Arrays.asList(5, 6, null, 7);
+		byte[] encoded=scheme.createEncoder(context).encode(numbers).asBytes();
+		Numbers decoded=scheme.createDecoder(context, encoded).decode(Numbers.class);
+		assertArrayEquals(numbers.ints, decoded.ints);
+		assertArrayEquals(numbers.longs, decoded.longs);
+		assertArrayEquals(numbers.doubles, decoded.doubles, 0d);
+		assertArrayEquals(numbers.floats, decoded.floats, 0f);
+		assertArrayEquals(numbers.booleans, decoded.booleans);
+		assertArrayEquals(numbers.signed, decoded.signed);
+		assertArrayEquals(numbers.fixed, decoded.fixed);
+		assertEquals(Arrays.asList(5, 6, 7), decoded.list);
+		assertArrayEquals(encoded, scheme.createEncoder(context).encode(decoded).asBytes());
+	}
+
+	@Test
+	public void unpackedDecodingTest() throws BaseException {
+		Context context=Context.createRootContext();
+		// Field 1 repeated and unpacked: 1, 2, 3
+		Numbers decoded=SCHEME.createDecoder(context, new byte[] { 8, 1, 8, 2, 8, 3 }).decode(Numbers.class);
+		assertArrayEquals(new int[] { 1, 2, 3 }, decoded.ints);
+	}
+
+	@Test
+	public void rootArrayTest() {
+		Context context=Context.createRootContext();
+		try {
+			ProtobufCodingScheme.DEFAULT_SCHEME.newBuilder().setRootType(int[].class).build().createEncoder(context).encode(new int[] { 1, 2, 3 });
+			fail();
+		} catch(BaseException e) {
+			assertEquals(BaseException.BAD_REQUEST, e.getCode());
+			assertTrue(e.getMessage().contains("int"));
+		}
+	}
+
+	@Test
+	public void sizeTest() throws BaseException {
+		Context context=Context.createRootContext();
+		Numbers numbers=new Numbers();
+		numbers.ints=new int[10000];
+		for(int i=0;i<numbers.ints.length;i++) {
+			numbers.ints[i]=i&0x7f;
+		}
+		byte[] encoded=SCHEME.createEncoder(context).encode(numbers).asBytes();
+		// Tag, 2 bytes length and one byte per element
+		assertEquals(10003, encoded.length);
+	}
+
+	public static class Numbers {
+		private static ClassTypeDefinition DESCR=new ClassTypeDefinition(Numbers.class);
+		static {
+			DESCR.createBuilder()
+				.createField("ints", new ArrayTypeDefinition(PrimitiveTypeDefinition.getTypeDescription(Integer.TYPE))).setOptional(true).build()
+				.createField("longs", new ArrayTypeDefinition(PrimitiveTypeDefinition.getTypeDescription(Long.TYPE))).setOptional(true).build()
+				.createField("doubles", new ArrayTypeDefinition(PrimitiveTypeDefinition.getTypeDescription(Double.TYPE))).setOptional(true).build()
+				.createField("floats", new ArrayTypeDefinition(PrimitiveTypeDefinition.getTypeDescription(Float.TYPE))).setOptional(true).build()
+				.createField("booleans", new ArrayTypeDefinition(PrimitiveTypeDefinition.getTypeDescription(Boolean.TYPE))).setOptional(true).build()
+				.createField("signed", new ArrayTypeDefinition(PrimitiveTypeDefinition.getTypeDescription(Integer.TYPE))).setOptional(true).addHint("protobuf:signed").build()
+				.createField("fixed", new ArrayTypeDefinition(PrimitiveTypeDefinition.getTypeDescription(Long.TYPE))).setOptional(true).addHint("protobuf:fixed").build()
+				.createField("list", new ArrayTypeDefinition(PrimitiveTypeDefinition.getTypeDescription(Integer.class))).setOptional(true).build()
+				.build();
+		}
+		public static TypeDefinition getTypeDescription() {
+			return DESCR;
+		}
+		int[] ints;
+		long[] longs;
+		double[] doubles;
+		float[] floats;
+		boolean[] booleans;
+		int[] signed;
+		long[] fixed;
+		List<Integer> list;
+
+		public Numbers() {
+		}
+	}
+}
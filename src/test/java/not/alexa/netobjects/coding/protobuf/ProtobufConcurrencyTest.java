@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2024 Not Alexa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package not.alexa.netobjects.coding.protobuf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import not.alexa.netobjects.BaseException;
+import not.alexa.netobjects.Context;
+import not.alexa.netobjects.coding.Decoder;
+import not.alexa.netobjects.types.ClassTypeDefinition.Field;
+import not.alexa.netobjects.types.Deferred;
+import not.alexa.netobjects.types.Namespace;
+import not.alexa.netobjects.types.ObjectType;
+import not.alexa.netobjects.types.access.Access;
+import not.alexa.netobjects.types.access.AccessContext;
+import not.alexa.netobjects.types.access.AccessFactory;
+
+public class ProtobufConcurrencyTest {
+	private static final int THREADS=16;
+	private static final int ITERATIONS=200;
+
+	public ProtobufConcurrencyTest() {
+	}
+
+	private static Message createMessage(int i) {
+		return new Message(i,"Message "+i,i%50,(i&1)==0?null:new Message(i+1,"Child "+i,10,new Message(i+2,"Grandchild",0,null)));
+	}
+
+	@Test
+	public void deferredAccessTest() throws BaseException {
+		Context context=Context.createRootContext();
+		ProtobufCodingScheme scheme=new ProtobufCodingScheme().newBuilder().setRootType(Message.class).build();
+		Message message=createMessage(1);
+		byte[] expected=scheme.createEncoder(context).encode(message).asBytes();
+		AtomicInteger calls=new AtomicInteger();
+		Access access=new Access.DelegatingAccess(scheme.getFactory().resolve(context, Message.getTypeDescription())) {
+			@Override
+			public Object getField(AccessContext context, Object o, Field f) throws BaseException {
+				calls.incrementAndGet();
+				return super.getField(context, o, f);
+			}
+		};
+		assertArrayEquals(expected, scheme.createEncoder(context).encode(new DeferredMessage(message,access)).asBytes());
+		int deferredCalls=calls.get();
+		// Encoding a deferred object doesn't change the access of the (shared) codec
+		assertArrayEquals(expected, scheme.createEncoder(context).encode(message).asBytes());
+		assertEquals(deferredCalls, calls.get());
+	}
+
+	@Test
+	public void concurrentEncodingTest() throws Exception {
+		Context context=Context.createRootContext();
+		// A new scheme to resolve the codecs concurrently
+		ProtobufCodingScheme scheme=new ProtobufCodingScheme().newBuilder().setRootType(Message.class).build();
+		ProtobufCodingScheme reference=new ProtobufCodingScheme().newBuilder().setRootType(Message.class).build();
+		Access access=new Access.DelegatingAccess(scheme.getFactory().resolve(context, Message.getTypeDescription())) {
+		};
+		Message[] messages=new Message[ITERATIONS];
+		byte[][] expected=new byte[ITERATIONS][];
+		for(int i=0;i<ITERATIONS;i++) {
+			messages[i]=createMessage(i);
+			expected[i]=reference.createEncoder(context).encode(messages[i]).asBytes();
+		}
+		ExecutorService executor=Executors.newFixedThreadPool(THREADS);
+		try {
+			CountDownLatch start=new CountDownLatch(1);
+			List<Future<Integer>> results=new ArrayList<>();
+			for(int t=0;t<THREADS;t++) {
+				int thread=t;
+				results.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						Context threadContext=Context.createRootContext();
+						start.await();
+						for(int n=0;n<ITERATIONS;n++) {
+							int i=(n+thread*7)%ITERATIONS;
+							// Mix deferred and plain objects
+							Object o=(n+thread)%3==0?new DeferredMessage(messages[i],access):messages[i];
+							byte[] encoded=scheme.createEncoder(threadContext).encode(o).asBytes();
+							assertArrayEquals(expected[i], encoded);
+							try(Decoder decoder=scheme.createDecoder(threadContext, encoded)) {
+								assertEquals(messages[i], decoder.decode(Message.class));
+							}
+						}
+						return ITERATIONS;
+					}
+				}));
+			}
+			start.countDown();
+			for(Future<Integer> result:results) {
+				assertEquals(ITERATIONS, (int)result.get(60, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Deferred object encoded using its own access.
+	 */
+	private static class DeferredMessage implements Deferred<Message,Message> {
+		private final Message message;
+		private final Access access;
+
+		private DeferredMessage(Message message,Access access) {
+			this.message=message;
+			this.access=access;
+		}
+
+		@Override
+		public boolean isResolved() {
+			return true;
+		}
+
+		@Override
+		public ObjectType getObjectType(Namespace ns) {
+			return access.getType().getType(ns);
+		}
+
+		@Override
+		public Object makeProxy(Class<?> clazz) throws BaseException {
+			throw new BaseException(BaseException.BAD_REQUEST, "Not supported");
+		}
+
+		@Override
+		public <R extends Message> Message getCodingObject(AccessContext context) {
+			return message;
+		}
+
+		@Override
+		public Access getCodingAccess(AccessContext context, AccessFactory factory) {
+			return access;
+		}
+	}
+}
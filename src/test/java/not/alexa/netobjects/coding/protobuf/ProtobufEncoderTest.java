@@ -0,0 +1,615 @@
+/*
+ * Copyright (C) 2024 Not Alexa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package not.alexa.netobjects.coding.protobuf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+import not.alexa.netobjects.BaseException;
+import not.alexa.netobjects.Context;
+import not.alexa.netobjects.coding.Decoder;
+import not.alexa.netobjects.coding.Encoder;
+import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.FieldSelector;
+import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.NativeProtobufSupport;
+import not.alexa.netobjects.coding.protobuf.ProtobufCodingScheme.PrimitiveTypeCodec;
+import not.alexa.netobjects.types.AccessibleObject;
+import not.alexa.netobjects.types.ClassTypeDefinition;
+import not.alexa.netobjects.types.PrimitiveTypeDefinition;
+import not.alexa.netobjects.types.TypeDefinition;
+import not.alexa.netobjects.types.access.Access;
+import not.alexa.netobjects.types.access.AccessContext;
+
+public class ProtobufEncoderTest {
+	private static final ProtobufCodingScheme SCHEME=ProtobufCodingScheme.DEFAULT_SCHEME.newBuilder().setRootType(Message.class).build();
+	private static final ProtobufCodingScheme DELIMITED_SCHEME=SCHEME.newBuilder().setDelimited(true).build();
+	private static final ProtobufCodingScheme TWO_PASS_SCHEME=SCHEME.newBuilder().setTwoPassEncoding(true).build();
+	private static final ProtobufCodingScheme ANY_SCHEME=ProtobufCodingScheme.DEFAULT_SCHEME.newBuilder().setDelimited(true).build();
+	private static final ProtobufCodingScheme DICTIONARY_SCHEME=ANY_SCHEME.newBuilder().setTypeDictionary(true).build();
+
+	public ProtobufEncoderTest() {
+	}
+
+	@Test
+	public void reuseTest() throws BaseException {
+		Context context=Context.createRootContext();
+		// Alternate small and large (chunked) messages to exercise reuse of buffer chunks
+		for(int i=0;i<20;i++) {
+			Message message=new Message(i,"Message "+i,(i&1)==0?10:50000,new Message(i+1,"Child",(i&1)==0?50000:10,null));
+			ByteArrayOutputStream out=new ByteArrayOutputStream();
+			try(Encoder encoder=SCHEME.createEncoder(context,out)) {
+				encoder.encode(message);
+			}
+			byte[] encoded=out.toByteArray();
+			assertArrayEquals(encoded, SCHEME.createEncoder(context).encode(message).asBytes());
+			try(Decoder decoder=SCHEME.createDecoder(context, encoded)) {
+				assertEquals(message, decoder.decode(Message.class));
+			}
+		}
+	}
+
+	@Test
+	public void twoPassTest() throws BaseException {
+		Context context=Context.createRootContext();
+		for(int length:new int[] { 0, 100, 127, 128, 16383, 16384, 100000 }) {
+			Message message=null;
+			for(int depth=0;depth<10;depth++) {
+				message=new Message(depth,"Message "+depth,length,message);
+			}
+			byte[] expected=SCHEME.createEncoder(context).encode(message).asBytes();
+			assertArrayEquals(expected, TWO_PASS_SCHEME.createEncoder(context).encode(message).asBytes());
+			byte[] target=new byte[expected.length];
+			assertEquals(expected.length, TWO_PASS_SCHEME.encode(context, message, target, 0));
+			assertArrayEquals(expected, target);
+		}
+	}
+
+	@Test
+	public void typeDictionaryTest() throws BaseException {
+		Context context=Context.createRootContext();
+		Object[] objects=new Object[20];
+		for(int i=0;i<objects.length;i++) {
+			objects[i]=(i%3)==2?"String "+i:new Message(i,"Message "+i,10,null);
+		}
+		ByteArrayOutputStream plain=new ByteArrayOutputStream();
+		ByteArrayOutputStream dictionary=new ByteArrayOutputStream();
+		try(Encoder plainEncoder=ANY_SCHEME.createEncoder(context, plain);
+				Encoder dictionaryEncoder=DICTIONARY_SCHEME.createEncoder(context, dictionary)) {
+			for(Object o:objects) {
+				plainEncoder.encode(o);
+				dictionaryEncoder.encode(o);
+			}
+		}
+		assertTrue(dictionary.size()<plain.size());
+		try(Decoder decoder=DICTIONARY_SCHEME.createDecoder(context, dictionary.toByteArray())) {
+			for(Object o:objects) {
+				assertEquals(o, decoder.decode(Object.class));
+			}
+			assertFalse(decoder.hasNext());
+		}
+		// The second message references a type defined in the first message and cannot be decoded alone
+		byte[] encoded=dictionary.toByteArray();
+		try(Decoder decoder=DICTIONARY_SCHEME.createDecoder(context, Arrays.copyOfRange(encoded, encoded[0]+1, encoded.length))) {
+			decoder.decode(Object.class);
+			fail();
+		} catch(BaseException e) {
+			assertEquals(BaseException.BAD_REQUEST, e.getCode());
+		}
+	}
+
+	@Test
+	public void typeDictionaryRetryTest() throws Exception {
+		Context context=Context.createRootContext();
+		Message small=new Message(1,"Small",10,null);
+		// The type defined by the message which doesn't fit into the buffer is defined again
+		ByteBuffer target=ByteBuffer.allocate(200);
+		try(Encoder encoder=DICTIONARY_SCHEME.createEncoder(context, target)) {
+			try {
+				encoder.encode(new Message(2,"Large",1000,null));
+				fail();
+			} catch(BaseException e) {
+				assertEquals(BaseException.BAD_REQUEST, e.getCode());
+			}
+			encoder.encode(small);
+		}
+		((Buffer)target).flip();
+		try(Decoder decoder=DICTIONARY_SCHEME.createDecoder(context, target)) {
+			assertEquals(small, decoder.decode(Object.class));
+			assertFalse(decoder.hasNext());
+		}
+		// The same applies to streams failing to write the message
+		ByteArrayOutputStream out=new ByteArrayOutputStream();
+		boolean[] fail=new boolean[] { true };
+		try(Encoder encoder=DICTIONARY_SCHEME.createEncoder(context, new FilterOutputStream(out) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				if(fail[0]) {
+					fail[0]=false;
+					throw new IOException("Write failed");
+				}
+				super.write(b, off, len);
+			}
+		})) {
+			try {
+				encoder.encode(small);
+				fail();
+			} catch(BaseException e) {
+			}
+			encoder.encode(small);
+		}
+		try(Decoder decoder=DICTIONARY_SCHEME.createDecoder(context, out.toByteArray())) {
+			assertEquals(small, decoder.decode(Object.class));
+			assertFalse(decoder.hasNext());
+		}
+	}
+
+	@Test
+	public void prepareTest() throws BaseException {
+		Context context=Context.createRootContext();
+		ProtobufCodingScheme scheme=new ProtobufCodingScheme().newBuilder().setRootType(Message.class).build();
+		assertTrue(scheme.prepare(context, Message.class, PackedArrayCodecTest.Numbers.class).isEmpty());
+		ClassCodec codec=(ClassCodec)scheme.getClassCodec(context, Message.getTypeDescription());
+		for(ClassCodec.FieldCodec fieldCodec:codec.fieldCodecs) {
+			assertTrue(fieldCodec.f.getName(),fieldCodec.primitiveTypeCodec!=null||fieldCodec.classCodec!=null);
+		}
+		// The recursive child field references the prepared codec
+		assertTrue(codec.fieldCodecs[4].classCodec==codec);
+		Message message=new Message(1,"Message",10,new Message(2,"Child",10,null));
+		assertEquals(message, scheme.createDecoder(context, scheme.createEncoder(context).encode(message).asBytes()).decode(Message.class));
+		// Classes without type definition are reported
+		Map<String,BaseException> failures=scheme.prepare(context, Thread.class);
+		assertEquals(1, failures.size());
+		assertEquals(BaseException.NOT_FOUND, failures.get(Thread.class.getName()).getCode());
+	}
+
+	@Test
+	public void nativePrepareTest() throws BaseException {
+		Context context=Context.createRootContext();
+		// Native messages are written as field 5 (instead of field 1 by the class codec)
+		ProtobufCodingScheme scheme=new ProtobufCodingScheme().newBuilder().setRootType(Holder.class).setNativeSupport(new NativeProtobufSupport() {
+			@Override
+			public byte[] getProtobufContent(Object o) {
+				return o instanceof NativeMsg?new byte[] { 40, (byte)((NativeMsg)o).v }:null;
+			}
+
+			@Override
+			public AccessibleObject getProtobufObject(AccessContext context, Access fieldAccess, byte[] value, int offset, int len) {
+				if(isNativeType(fieldAccess.getType().asClass(fieldAccess.getAccessLoader()))&&len==2&&value[offset]==40) try {
+					NativeMsg msg=new NativeMsg();
+					msg.v=value[offset+1];
+					return fieldAccess.makeAccessible(context, msg);
+				} catch(BaseException e) {
+				}
+				return null;
+			}
+
+			@Override
+			public boolean isNativeType(Class<?> clazz) {
+				return NativeMsg.class.equals(clazz);
+			}
+		}).build();
+		Holder holder=new Holder();
+		holder.msg=new NativeMsg();
+		holder.msg.v=7;
+		byte[] expected=new byte[] { 10, 2, 40, 7 };
+		assertArrayEquals(expected, scheme.createEncoder(context).encode(holder).asBytes());
+		assertTrue(scheme.prepare(context, Holder.class).isEmpty());
+		// Preparing doesn't change the wire format
+		assertArrayEquals(expected, scheme.createEncoder(context).encode(holder).asBytes());
+		assertEquals(7, scheme.createDecoder(context, expected).decode(Holder.class).msg.v);
+		// The same for a scheme prepared before first use
+		scheme=scheme.newBuilder().build();
+		assertTrue(scheme.prepare(context, Holder.class).isEmpty());
+		assertArrayEquals(expected, scheme.createEncoder(context).encode(holder).asBytes());
+		assertEquals(7, scheme.createDecoder(context, expected).decode(Holder.class).msg.v);
+	}
+
+	@Test
+	public void sparseNumbersTest() throws BaseException {
+		Context context=Context.createRootContext();
+		ProtobufCodingScheme scheme=ProtobufCodingScheme.DEFAULT_SCHEME.newBuilder().setRootType(Sparse.class).build();
+		Sparse sparse=new Sparse();
+		sparse.a=1;
+		sparse.b="b";
+		sparse.c=3;
+		byte[] encoded=scheme.createEncoder(context).encode(sparse).asBytes();
+		// Fields are encoded ordered by number: Field 1 (declared last) first
+		assertArrayEquals(new byte[] { 8, 3 }, Arrays.copyOf(encoded, 2));
+		Sparse decoded=scheme.createDecoder(context, encoded).decode(Sparse.class);
+		assertEquals(sparse.a, decoded.a);
+		assertEquals(sparse.b, decoded.b);
+		assertEquals(sparse.c, decoded.c);
+		// Field 2 is unknown and skipped
+		assertEquals(3, scheme.createDecoder(context, new byte[] { 16, 1, 8, 3 }).decode(Sparse.class).c);
+	}
+
+	@Test
+	public void unknownFieldsTest() throws BaseException {
+		Context context=Context.createRootContext();
+		ProtobufCodingScheme viewScheme=ProtobufCodingScheme.DEFAULT_SCHEME.newBuilder().setRootType(MessageView.class).build();
+		ProtobufCodingScheme preservingScheme=viewScheme.newBuilder().setPreserveUnknownFields(true).build();
+		Message message=new Message(1,"Message",100,new Message(2,"Child",10,null));
+		byte[] encoded=SCHEME.createEncoder(context).encode(message).asBytes();
+		// Unknown fields are skipped
+		MessageView view=viewScheme.createDecoder(context, encoded).decode(MessageView.class);
+		assertEquals(1, view.id);
+		assertEquals("Message", view.name);
+		assertNull(view.unknownFields);
+		// Unknown fields are preserved and encoded unchanged
+		view=preservingScheme.createDecoder(context, encoded).decode(MessageView.class);
+		assertEquals(1, view.id);
+		assertEquals("Message", view.name);
+		view.name="Changed";
+		message.name="Changed";
+		assertEquals(message, SCHEME.createDecoder(context, preservingScheme.createEncoder(context).encode(view).asBytes()).decode(Message.class));
+		// Unknown fixed size fields
+		byte[] fixed=new byte[] { 8, 1, 0x11, 1, 2, 3, 4, 5, 6, 7, 8, 0x15, 1, 2, 3, 4 };
+		view=preservingScheme.createDecoder(context, fixed).decode(MessageView.class);
+		assertArrayEquals(fixed, preservingScheme.createEncoder(context).encode(view).asBytes());
+		// Unknown messages may reference the type dictionary and cannot be preserved
+		try {
+			preservingScheme.newBuilder().setTypeDictionary(true).build().createDecoder(context, encoded).decode(MessageView.class);
+			fail();
+		} catch(BaseException e) {
+			assertEquals(BaseException.BAD_REQUEST, e.getCode());
+		}
+	}
+
+	@Test
+	public void projectionTest() throws BaseException {
+		Context context=Context.createRootContext();
+		FieldSelector selector=FieldSelector.of(Message.getTypeDescription(),"id","name","child");
+		Message message=new Message(1,"Message",100,new Message(2,"Child",10,null));
+		byte[] encoded=SCHEME.createEncoder(context).encode(message).asBytes();
+		Message decoded=SCHEME.createDecoder(context, encoded).decode(Message.class,selector);
+		assertEquals(1, decoded.id);
+		assertEquals("Message", decoded.name);
+		assertNull(decoded.payload);
+		assertNull(decoded.samples);
+		assertEquals(0, decoded.timestamp);
+		assertEquals(2, decoded.child.id);
+		assertEquals("Child", decoded.child.name);
+		assertNull(decoded.child.payload);
+		// The selector applies to one decoding only
+		assertEquals(message, SCHEME.createDecoder(context, encoded).decode(Message.class));
+		// Default selector of the scheme
+		ProtobufCodingScheme scheme=SCHEME.newBuilder().setFieldSelector(selector).build();
+		try(Decoder decoder=scheme.createDecoder(context, encoded)) {
+			decoded=decoder.decode(Message.class);
+			assertNull(decoded.payload);
+			assertEquals(2, decoded.child.id);
+		}
+		// Types are matched by name
+		decoded=SCHEME.createDecoder(context, encoded).decode(Message.class,FieldSelector.of(new ClassTypeDefinition(Message.class),"id"));
+		assertEquals(1, decoded.id);
+		assertNull(decoded.name);
+		assertNull(decoded.child);
+	}
+
+	@Test
+	public void varintTest() throws Exception {
+		long[] values=new long[] { 0, 1, 127, 128, 16383, 16384, (1l<<21)-1, 1l<<21, (1l<<28)-1, 1l<<28, Integer.MAX_VALUE, 1l<<31, 1l<<35, 1l<<42, 1l<<49, 1l<<56, 1l<<62, Long.MAX_VALUE, -1, Integer.MIN_VALUE, Long.MIN_VALUE };
+		for(long value:values) {
+			ProtobufBuffer buffer=new ProtobufBuffer();
+			buffer.writeVarint(value);
+			byte[] encoded=buffer.writeTo(new ByteArrayOutputStream()).toByteArray();
+			// Exact length (checked path) and padded (unchecked path)
+			assertEquals(value, new ProtobufBuffer(encoded).readLong());
+			assertEquals(value, new ProtobufBuffer(Arrays.copyOf(encoded, encoded.length+10),0,encoded.length+10).readLong());
+			assertEquals((int)value, new ProtobufBuffer(encoded).readInt());
+			// Reads are bounded by the length of the buffer, not of the array
+			try {
+				new ProtobufBuffer(Arrays.copyOf(encoded, 20),0,encoded.length-1).readLong();
+				fail();
+			} catch(EOFException e) {
+			}
+		}
+		Context context=Context.createRootContext();
+		Message message=new Message(Integer.MIN_VALUE,"Message",10,null);
+		message.timestamp=System.currentTimeMillis()<<10;
+		assertEquals(message, SCHEME.createDecoder(context, SCHEME.createEncoder(context).encode(message).asBytes()).decode(Message.class));
+		message.timestamp=-message.timestamp;
+		assertEquals(message, SCHEME.createDecoder(context, new ByteArrayInputStream(SCHEME.createEncoder(context).encode(message).asBytes())).decode(Message.class));
+	}
+
+	@Test
+	public void stringTest() throws Exception {
+		String[] strings=new String[] { "", "ascii", "\u00e4\u00f6\u00fc\u00df", "\u20ac uro", "\ud83d\ude00 smiley", "unpaired \ud83d and \ude00", "end \ud83d" };
+		for(String s:strings) {
+			byte[] expected=s.getBytes(StandardCharsets.UTF_8);
+			ProtobufBuffer buffer=new ProtobufBuffer();
+			buffer.write(0, s);
+			byte[] encoded=buffer.writeTo(new ByteArrayOutputStream()).toByteArray();
+			assertArrayEquals(s, expected, encoded);
+			assertEquals(new String(expected,StandardCharsets.UTF_8), ProtobufBuffer.readString(encoded, 0, encoded.length));
+		}
+		Context context=Context.createRootContext();
+		Message message=new Message(1,strings[4],0,null);
+		assertEquals(message, SCHEME.createDecoder(context, SCHEME.createEncoder(context).encode(message).asBytes()).decode(Message.class));
+	}
+
+	@Test
+	public void byteArrayTest() throws BaseException {
+		Context context=Context.createRootContext();
+		Message message=new Message(1,"Message",20000,null);
+		byte[] expected=SCHEME.createEncoder(context).encode(message).asBytes();
+		byte[] target=new byte[expected.length+10];
+		assertEquals(expected.length+5, SCHEME.encode(context, message, target, 5));
+		assertArrayEquals(expected, Arrays.copyOfRange(target, 5, expected.length+5));
+		try {
+			SCHEME.encode(context, message, target, 11);
+			fail();
+		} catch(BaseException e) {
+			assertEquals(BaseException.BAD_REQUEST, e.getCode());
+		}
+		// The pooled buffer is usable after the failure
+		assertEquals(expected.length, SCHEME.encode(context, message, target, 0));
+		assertArrayEquals(expected, Arrays.copyOf(target, expected.length));
+	}
+
+	@Test
+	public void byteBufferTest() throws BaseException {
+		Context context=Context.createRootContext();
+		for(ByteBuffer buffer:new ByteBuffer[] { ByteBuffer.allocate(100000), ByteBuffer.allocateDirect(100000) }) {
+			buffer.put((byte)1);
+			Message[] messages=new Message[10];
+			try(Encoder encoder=DELIMITED_SCHEME.createEncoder(context, buffer)) {
+				for(int i=0;i<messages.length;i++) {
+					messages[i]=new Message(i,"Message "+i,i*1000,null);
+					encoder.encode(messages[i]);
+				}
+			}
+			buffer.flip();
+			buffer.get();
+			try(Decoder decoder=DELIMITED_SCHEME.createDecoder(context, buffer.slice())) {
+				for(Message message:messages) {
+					assertEquals(message, decoder.decode(Message.class));
+				}
+				assertFalse(decoder.hasNext());
+			}
+			assertEquals(1, buffer.position());
+		}
+	}
+
+	@Test
+	public void byteBufferOverflowTest() throws BaseException {
+		Context context=Context.createRootContext();
+		Message message=new Message(1,"Message",1000,null);
+		try(Encoder encoder=SCHEME.createEncoder(context, ByteBuffer.allocateDirect(500))) {
+			encoder.encode(message);
+			fail();
+		} catch(BaseException e) {
+			assertEquals(BaseException.BAD_REQUEST, e.getCode());
+		}
+	}
+
+	@Test
+	public void primitiveFieldsTest() throws Exception {
+		Context context=Context.createRootContext();
+		Primitives primitives=new Primitives();
+		primitives.i=-17;
+		primitives.l=1l<<40;
+		primitives.s=-5;
+		primitives.b=true;
+		primitives.f=1.5f;
+		primitives.d=-2.25;
+		primitives.n=7;
+		// The wire format is the same as for boxed values, the default value (7) of field n is not encoded
+		ProtobufBuffer buffer=new ProtobufBuffer()
+				.write(1,-17)
+				.write(2,1l<<40)
+				.writeZigZag(3,-5)
+				.write(4,1)
+				.write(5,1.5f)
+				.write(6,-2.25);
+		byte[] expected=buffer.writeTo(new ByteArrayOutputStream()).toByteArray();
+		ProtobufCodingScheme scheme=ProtobufCodingScheme.DEFAULT_SCHEME.newBuilder().setRootType(Primitives.class).build();
+		// The first pass resolves the codecs using boxed values
+		for(int i=0;i<2;i++) {
+			byte[] encoded=scheme.createEncoder(context).encode(primitives).asBytes();
+			assertArrayEquals(expected, encoded);
+			Primitives decoded=scheme.createDecoder(context, encoded).decode(Primitives.class);
+			assertEquals(-17, decoded.i);
+			assertEquals(1l<<40, decoded.l);
+			assertEquals(-5, decoded.s);
+			assertTrue(decoded.b);
+			assertEquals(1.5f, decoded.f, 0f);
+			assertEquals(-2.25, decoded.d, 0d);
+			assertEquals(7, decoded.n);
+		}
+	}
+
+	@Test
+	public void boxedFallbackTest() throws Exception {
+		ProtobufCodingScheme scheme=ProtobufCodingScheme.DEFAULT_SCHEME;
+		PrimitiveTypeCodec intCodec=scheme.getPrimitiveTypeCodec(Integer.TYPE);
+		PrimitiveTypeCodec doubleCodec=scheme.getPrimitiveTypeCodec(Double.TYPE);
+		// Codecs implementing the boxed methods only
+		PrimitiveTypeCodec boxedInt=new PrimitiveTypeCodec() {
+			@Override
+			public void encode(ProtobufBuffer buffer, int field, Object o) {
+				intCodec.encode(buffer, field, o);
+			}
+
+			@Override
+			public Object decode(long value) throws BaseException {
+				return intCodec.decode(value);
+			}
+
+			@Override
+			public Class<?> getPrimitiveType() {
+				return int.class;
+			}
+		};
+		PrimitiveTypeCodec boxedDouble=new PrimitiveTypeCodec() {
+			@Override
+			public void encode(ProtobufBuffer buffer, int field, Object o) {
+				doubleCodec.encode(buffer, field, o);
+			}
+
+			@Override
+			public Object decode(long value) throws BaseException {
+				return doubleCodec.decode(value);
+			}
+
+			@Override
+			public Class<?> getPrimitiveType() {
+				return double.class;
+			}
+		};
+		ByteArrayOutputStream expected=new ByteArrayOutputStream();
+		ByteArrayOutputStream encoded=new ByteArrayOutputStream();
+		ProtobufBuffer buffer=new ProtobufBuffer();
+		intCodec.encodeLong(buffer, 1, -300);
+		doubleCodec.encodeDouble(buffer, 2, 1.5);
+		buffer.writeTo(expected);
+		buffer=new ProtobufBuffer();
+		boxedInt.encodeLong(buffer, 1, -300);
+		boxedDouble.encodeDouble(buffer, 2, 1.5);
+		buffer.writeTo(encoded);
+		assertArrayEquals(expected.toByteArray(), encoded.toByteArray());
+		assertEquals(-300, boxedInt.decodeLong(-300));
+		assertEquals(1.5, boxedDouble.decodeDouble(Double.doubleToLongBits(1.5)), 0d);
+	}
+
+	public static class Sparse {
+		private static ClassTypeDefinition DESCR=new ClassTypeDefinition(Sparse.class);
+		static {
+			DESCR.createBuilder()
+				.createField("a", PrimitiveTypeDefinition.getTypeDescription(Integer.TYPE)).setNumber(100000).setOptional(true).build()
+				.createField("b", PrimitiveTypeDefinition.getTypeDescription(String.class)).setNumber(1000).setOptional(true).build()
+				.createField("c", PrimitiveTypeDefinition.getTypeDescription(Integer.TYPE)).setNumber(1).setOptional(true).build()
+				.build();
+		}
+		public static TypeDefinition getTypeDescription() {
+			return DESCR;
+		}
+		int a;
+		String b;
+		int c;
+
+		public Sparse() {
+		}
+	}
+
+	/**
+	 * A view of {@link Message} with fields id and name only.
+	 */
+	public static class MessageView implements ProtobufCodingScheme.UnknownFieldSupport {
+		private static ClassTypeDefinition DESCR=new ClassTypeDefinition(MessageView.class);
+		static {
+			DESCR.createBuilder()
+				.createField("id", PrimitiveTypeDefinition.getTypeDescription(Integer.TYPE)).setNumber(1).setOptional(true).build()
+				.createField("name", PrimitiveTypeDefinition.getTypeDescription(String.class)).setNumber(3).setOptional(true).build()
+				.build();
+		}
+		public static TypeDefinition getTypeDescription() {
+			return DESCR;
+		}
+		int id;
+		String name;
+		byte[] unknownFields;
+
+		public MessageView() {
+		}
+
+		@Override
+		public byte[] getUnknownFields() {
+			return unknownFields;
+		}
+
+		@Override
+		public void setUnknownFields(byte[] unknownFields) {
+			this.unknownFields=unknownFields;
+		}
+	}
+
+	public static class NativeMsg {
+		private static ClassTypeDefinition DESCR=new ClassTypeDefinition(NativeMsg.class);
+		static {
+			DESCR.createBuilder()
+				.createField("v", PrimitiveTypeDefinition.getTypeDescription(Integer.TYPE)).setOptional(true).build()
+				.build();
+		}
+		public static TypeDefinition getTypeDescription() {
+			return DESCR;
+		}
+		int v;
+
+		public NativeMsg() {
+		}
+	}
+
+	public static class Holder {
+		private static ClassTypeDefinition DESCR=new ClassTypeDefinition(Holder.class);
+		static {
+			DESCR.createBuilder()
+				.createField("msg", NativeMsg.getTypeDescription()).setOptional(true).build()
+				.build();
+		}
+		public static TypeDefinition getTypeDescription() {
+			return DESCR;
+		}
+		NativeMsg msg;
+
+		public Holder() {
+		}
+	}
+
+		public static class Primitives {
+		private static ClassTypeDefinition DESCR=new ClassTypeDefinition(Primitives.class);
+		static {
+			DESCR.createBuilder()
+				.createField("i", PrimitiveTypeDefinition.getTypeDescription(Integer.TYPE)).setOptional(true).build()
+				.createField("l", PrimitiveTypeDefinition.getTypeDescription(Long.TYPE)).setOptional(true).build()
+				.createField("s", PrimitiveTypeDefinition.getTypeDescription(Integer.TYPE)).setOptional(true).addHint("protobuf:signed").build()
+				.createField("b", PrimitiveTypeDefinition.getTypeDescription(Boolean.TYPE)).setOptional(true).build()
+				.createField("f", PrimitiveTypeDefinition.getTypeDescription(Float.TYPE)).setOptional(true).build()
+				.createField("d", PrimitiveTypeDefinition.getTypeDescription(Double.TYPE)).setOptional(true).build()
+				.createField("n", PrimitiveTypeDefinition.getTypeDescription(Integer.TYPE)).setOptional(true).setDefaultValue(7).build()
+				.build();
+		}
+		public static TypeDefinition getTypeDescription() {
+			return DESCR;
+		}
+		int i;
+		long l;
+		int s;
+		boolean b;
+		float f;
+		double d;
+		int n=7;
+
+		public Primitives() {
+		}
+	}
+}
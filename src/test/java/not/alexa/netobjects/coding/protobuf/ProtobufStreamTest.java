@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2024 Not Alexa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package not.alexa.netobjects.coding.protobuf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import not.alexa.netobjects.BaseException;
+import not.alexa.netobjects.Context;
+import not.alexa.netobjects.coding.Decoder;
+import not.alexa.netobjects.coding.Encoder;
+import not.alexa.netobjects.utils.Sequence;
+
+public class ProtobufStreamTest {
+	private static final ProtobufCodingScheme SCHEME=ProtobufCodingScheme.DEFAULT_SCHEME.newBuilder().setRootType(Message.class).build();
+	private static final ProtobufCodingScheme STREAMING_SCHEME=SCHEME.newBuilder().setDecodingWindow(64).build();
+	private static final ProtobufCodingScheme DELIMITED_SCHEME=SCHEME.newBuilder().setDelimited(true).build();
+
+	public ProtobufStreamTest() {
+	}
+
+	@Test
+	public void streamingTest() throws BaseException {
+		Context context=Context.createRootContext();
+		for(int length:new int[] { 0, 10, 63, 64, 65, 1000, 100000 }) {
+			Message message=new Message(1,"Message "+length,length,new Message(2,"Child",length,null));
+			byte[] encoded=SCHEME.createEncoder(context).encode(message).asBytes();
+			try(Decoder decoder=STREAMING_SCHEME.createDecoder(context, new TrickleInputStream(encoded))) {
+				assertEquals(message, decoder.decode(Message.class));
+			}
+		}
+	}
+
+	@Test
+	public void byteArrayTest() throws BaseException {
+		Context context=Context.createRootContext();
+		Message message=new Message(1,"Message",100,null);
+		byte[] encoded=SCHEME.createEncoder(context).encode(message).asBytes();
+		try(Decoder decoder=SCHEME.createDecoder(context, encoded)) {
+			assertEquals(message, decoder.decode(Message.class));
+		}
+	}
+
+	@Test
+	public void truncatedTest() {
+		Context context=Context.createRootContext();
+		Message message=new Message(1,"Message",1000,null);
+		try {
+			byte[] encoded=SCHEME.createEncoder(context).encode(message).asBytes();
+			try(Decoder decoder=STREAMING_SCHEME.createDecoder(context, new TrickleInputStream(Arrays.copyOf(encoded, encoded.length-10)))) {
+				decoder.decode(Message.class);
+				fail();
+			}
+		} catch(BaseException e) {
+		}
+	}
+
+	@Test
+	public void delimitedTest() throws BaseException {
+		Context context=Context.createRootContext();
+		Message[] messages=new Message[100];
+		ByteArrayOutputStream out=new ByteArrayOutputStream();
+		try(Encoder encoder=DELIMITED_SCHEME.createEncoder(context, out)) {
+			assertTrue(encoder.supportsMultipleObjects());
+			for(int i=0;i<messages.length;i++) {
+				messages[i]=new Message(i,"Message "+i,i*10,i%3==0?null:new Message(1000+i,"Child",i,null));
+				encoder.encode(messages[i]);
+			}
+		}
+		byte[] encoded=out.toByteArray();
+		for(Decoder decoder:new Decoder[] { DELIMITED_SCHEME.createDecoder(context, encoded), DELIMITED_SCHEME.createDecoder(context, new TrickleInputStream(encoded))}) {
+			int n=0;
+			try(Sequence<Message> sequence=decoder.decodeAll(Message.class)) {
+				for(Message message:sequence) {
+					assertEquals(messages[n++], message);
+				}
+			}
+			assertEquals(messages.length, n);
+			assertFalse(decoder.hasNext());
+		}
+		// Empty streams contain no message
+		assertFalse(DELIMITED_SCHEME.createDecoder(context, new byte[0]).hasNext());
+		assertFalse(DELIMITED_SCHEME.createDecoder(context, new ByteArrayInputStream(new byte[0])).hasNext());
+	}
+
+	@Test
+	public void mappedFileTest() throws Exception {
+		Context context=Context.createRootContext();
+		Path path=Files.createTempFile("messages", ".pwf");
+		try {
+			Message[] messages=new Message[50];
+			long[] positions=new long[messages.length+1];
+			try(OutputStream out=Files.newOutputStream(path);Encoder encoder=DELIMITED_SCHEME.createEncoder(context, out)) {
+				for(int i=0;i<messages.length;i++) {
+					messages[i]=new Message(i,"Message "+i,i*100,new Message(i+1,"Child",i,null));
+					encoder.encode(messages[i]);
+					positions[i+1]=Files.size(path);
+				}
+			}
+			try(Decoder decoder=DELIMITED_SCHEME.createDecoder(context, path)) {
+				for(Message message:messages) {
+					assertEquals(message, decoder.decode(Message.class));
+				}
+				assertFalse(decoder.hasNext());
+			}
+			// Random access
+			try(FileChannel channel=FileChannel.open(path, StandardOpenOption.READ)) {
+				for(int i=messages.length-1;i>=0;i-=7) {
+					try(Decoder decoder=DELIMITED_SCHEME.createDecoder(context, channel, positions[i], positions[i+1]-positions[i])) {
+						assertEquals(messages[i], decoder.decode(Message.class));
+						assertFalse(decoder.hasNext());
+					}
+				}
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void mappedDeferredContentTest() throws Exception {
+		Context context=Context.createRootContext();
+		ProtobufCodingScheme scheme=LazyDecodingTest.SCHEME.newBuilder().setDelimited(true).build();
+		Path path=Files.createTempFile("envelopes", ".pwf");
+		try {
+			try(OutputStream out=Files.newOutputStream(path);Encoder encoder=scheme.createEncoder(context, out)) {
+				for(int i=0;i<10;i++) {
+					encoder.encode(new LazyDecodingTest.Envelope(i,new LazyDecodingTest.TextBody("Body "+i),null));
+				}
+			}
+			try(Decoder decoder=scheme.createDecoder(context, path)) {
+				for(int i=0;i<10;i++) {
+					LazyDecodingTest.Envelope envelope=decoder.decode(LazyDecodingTest.Envelope.class);
+					assertEquals(i, envelope.id);
+					// The deferred content is a slice of the (read only) mapping
+					ByteBuffer content=((DeferredProtobufObject)Proxy.getInvocationHandler(envelope.body)).content.b;
+					assertTrue(content.isDirect());
+					assertTrue(content.isReadOnly());
+					assertEquals("Body "+i, envelope.body.getText());
+				}
+				assertFalse(decoder.hasNext());
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void interningTest() throws BaseException {
+		Context context=Context.createRootContext();
+		ProtobufCodingScheme scheme=SCHEME.newBuilder().setInterning(64, 16).build();
+		byte[] encoded=scheme.createEncoder(context).encode(new Message(1,"Message",100,null)).asBytes();
+		Message m1=scheme.createDecoder(context, encoded).decode(Message.class);
+		Message m2=scheme.createDecoder(context, encoded).decode(Message.class);
+		assertEquals(m1, m2);
+		assertSame(m1.name, m2.name);
+		// Too long to intern
+		assertNotSame(m1.payload, m2.payload);
+		// Without interning
+		assertNotSame(SCHEME.createDecoder(context, encoded).decode(Message.class).name, SCHEME.createDecoder(context, encoded).decode(Message.class).name);
+		// Any types are interned as well
+		ProtobufCodingScheme anyScheme=ProtobufCodingScheme.DEFAULT_SCHEME.newBuilder().setInterning(64, 16).build();
+		encoded=anyScheme.createEncoder(context).encode(m1).asBytes();
+		assertEquals(m1, anyScheme.createDecoder(context, encoded).decode(Message.class));
+		assertEquals(m1, anyScheme.createDecoder(context, encoded).decode(Message.class));
+	}
+
+	/**
+	 * Input stream returning at most three bytes per read.
+	 */
+	private static class TrickleInputStream extends ByteArrayInputStream {
+		TrickleInputStream(byte[] content) {
+			super(content);
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) {
+			return super.read(b, off, Math.min(3, len));
+		}
+	}
+}
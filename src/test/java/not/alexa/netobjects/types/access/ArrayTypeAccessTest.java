@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2024 Not Alexa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package not.alexa.netobjects.types.access;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import not.alexa.netobjects.BaseException;
+import not.alexa.netobjects.Context;
+import not.alexa.netobjects.types.AccessibleObject;
+import not.alexa.netobjects.types.ArrayTypeDefinition;
+import not.alexa.netobjects.types.PrimitiveTypeDefinition;
+import not.alexa.netobjects.types.TypeDefinition;
+
+public class ArrayTypeAccessTest {
+	private static final Class<?>[] TYPES={ Integer.TYPE, Long.TYPE, Short.TYPE, Byte.TYPE, Character.TYPE, Boolean.TYPE, Float.TYPE, Double.TYPE };
+
+	public ArrayTypeAccessTest() {
+	}
+
+	private static ArrayTypeAccess createAccess(Context rootContext,Class<?> componentType) {
+		return createAccess(rootContext,componentType,Array.newInstance(componentType, 0).getClass());
+	}
+
+	private static ArrayTypeAccess createAccess(Context rootContext,Class<?> componentType,Class<?> targetClass) {
+		TypeDefinition componentDefinition=PrimitiveTypeDefinition.getTypeDescription(componentType);
+		return new ArrayTypeAccess(new ArrayTypeDefinition(componentDefinition),
+				AccessFactory.getDefault().resolve(rootContext, componentDefinition),
+				targetClass);
+	}
+
+	@Test
+	public void primitiveArrayTest() throws BaseException {
+		Context rootContext=Context.createRootContext();
+		for(Class<?> type:TYPES) {
+			ArrayTypeAccess access=createAccess(rootContext,type);
+			AccessContext context=access.createContext(rootContext);
+			AccessibleObject array=access.newAccessible(context);
+			assertTrue(array instanceof ArrayTypeAccess.PrimitiveAccessibleArray);
+			// More elements than the initial capacity
+			Object expected=Array.newInstance(type, 40);
+			for(int i=0;i<40;i++) {
+				Object v=type==Boolean.TYPE?(Object)((i&1)==0):type==Character.TYPE?(Object)(char)('a'+i):null;
+				if(v==null) {
+					((ArrayTypeAccess.PrimitiveAccessibleArray)array).addLong(i);
+					Array.set(expected, i, Array.get(array.getObject(), i));
+					assertEquals(i, ((Number)Array.get(expected, i)).intValue());
+				} else {
+					array.add(access.getComponentAccess().makeAccessible(context, v));
+					Array.set(expected, i, v);
+				}
+			}
+			Object decoded=array.getObject();
+			assertEquals(expected.getClass(), decoded.getClass());
+			assertEquals(40, Array.getLength(decoded));
+			for(int i=0;i<40;i++) {
+				assertEquals(Array.get(expected, i), Array.get(decoded, i));
+			}
+			// The returned array is not modified by further additions
+			array.add(access.getComponentAccess().makeAccessible(context, Array.get(expected, 0)));
+			assertEquals(40, Array.getLength(decoded));
+			assertEquals(41, Array.getLength(array.getObject()));
+			// The sequence of an existing array
+			int n=0;
+			for(AccessibleObject o:access.makeAccessible(context, expected).asSequence()) {
+				assertEquals(Array.get(expected, n++), o.getObject());
+			}
+			assertEquals(40, n);
+		}
+	}
+
+	@Test
+	public void floatingPointTest() throws BaseException {
+		Context rootContext=Context.createRootContext();
+		ArrayTypeAccess access=createAccess(rootContext,Double.TYPE);
+		AccessContext context=access.createContext(rootContext);
+		ArrayTypeAccess.PrimitiveAccessibleArray array=(ArrayTypeAccess.PrimitiveAccessibleArray)access.newAccessible(context);
+		array.addDouble(1.5);
+		array.add(access.getComponentAccess().makeAccessible(context, -2.25));
+		assertArrayEquals(new double[] { 1.5, -2.25 }, (double[])array.getObject(), 0d);
+		try {
+			array.add(access.getComponentAccess().makeAccessible(context, null));
+			fail();
+		} catch(BaseException e) {
+			assertEquals(BaseException.BAD_REQUEST, e.getCode());
+		}
+	}
+
+	@Test
+	public void collectingTest() throws BaseException {
+		Context rootContext=Context.createRootContext();
+		for(Class<?> targetClass:new Class<?>[] { String[].class, List.class, ArrayList.class, LinkedList.class, Set.class }) {
+			ArrayTypeAccess access=createAccess(rootContext,String.class,targetClass);
+			AccessContext context=access.createContext(rootContext);
+			AccessibleObject array=access.newAccessible(context);
+			((ArrayTypeAccess.Presizable)array).expect(20);
+			List<String> expected=new ArrayList<>();
+			for(int i=0;i<40;i++) {
+				expected.add("e"+i);
+				array.add(access.getComponentAccess().makeAccessible(context, "e"+i));
+			}
+			Object decoded=array.getObject();
+			assertTrue(targetClass.isInstance(decoded));
+			// No copy if the target is complete
+			assertSame(decoded, array.getObject());
+			assertEquals(targetClass==Set.class?new HashSet<>(expected):expected, targetClass.isArray()?Arrays.asList((Object[])decoded):decoded);
+			// The returned target is not modified by further additions
+			array.add(access.getComponentAccess().makeAccessible(context, "e40"));
+			assertEquals(40, ArrayTypeAccess.canonicalize(decoded).size());
+			assertEquals(41, ArrayTypeAccess.canonicalize(array.getObject()).size());
+			int n=0;
+			for(AccessibleObject o:array.asSequence()) {
+				assertTrue(o.getObject().toString().startsWith("e"));
+				n++;
+			}
+			assertEquals(41, n);
+		}
+		// A hint matching the number of elements avoids the final copy
+		ArrayTypeAccess access=createAccess(rootContext,String.class,String[].class);
+		AccessContext context=access.createContext(rootContext);
+		AccessibleObject array=access.newAccessible(context);
+		((ArrayTypeAccess.Presizable)array).expect(3);
+		for(String s:new String[] { "a", "b", "c" }) {
+			array.add(access.getComponentAccess().makeAccessible(context, s));
+		}
+		assertSame(array.getObject(), array.getObject());
+		assertArrayEquals(new String[] { "a", "b", "c" }, (String[])array.getObject());
+	}
+}
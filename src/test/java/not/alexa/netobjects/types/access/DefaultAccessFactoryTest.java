@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2024 Not Alexa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package not.alexa.netobjects.types.access;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import not.alexa.netobjects.Context;
+import not.alexa.netobjects.api.Overlay;
+import not.alexa.netobjects.types.ArrayTypeDefinition;
+import not.alexa.netobjects.types.ClassTypeDefinition;
+import not.alexa.netobjects.types.DefaultTypeLoader;
+import not.alexa.netobjects.types.ObjectType;
+import not.alexa.netobjects.types.PrimitiveTypeDefinition;
+import not.alexa.netobjects.types.TypeDefinition;
+
+public class DefaultAccessFactoryTest {
+	private static final int THREADS=8;
+
+	public DefaultAccessFactoryTest() {
+	}
+
+	@Test
+	public void concurrentResolveTest() throws Exception {
+		for(int i=0;i<20;i++) {
+			DefaultAccessFactory factory=new DefaultAccessFactory();
+			Context context=Context.createRootContext();
+			TypeDefinition[] types=new TypeDefinition[] { Node.getTypeDescription(), new ArrayTypeDefinition(Node.getTypeDescription()) };
+			ExecutorService executor=Executors.newFixedThreadPool(THREADS);
+			try {
+				CountDownLatch start=new CountDownLatch(1);
+				List<Future<Access[]>> results=new ArrayList<>();
+				for(int j=0;j<THREADS;j++) {
+					results.add(executor.submit(new Callable<Access[]>() {
+						@Override
+						public Access[] call() throws Exception {
+							start.await();
+							Access[] accesses=new Access[types.length+1];
+							for(int k=0;k<types.length;k++) {
+								accesses[k]=factory.resolve(context, types[k]);
+							}
+							// The runtime info is resolved through the type map of the loader
+							assertNotNull(factory.resolve(context, ObjectType.createClassType(Node.class)));
+							accesses[types.length]=factory.resolve(context, types[0]);
+							return accesses;
+						}
+					}));
+				}
+				start.countDown();
+				Access[] expected=results.get(0).get();
+				assertSame(expected[0], expected[types.length]);
+				for(Future<Access[]> result:results) {
+					Access[] accesses=result.get();
+					for(int k=0;k<accesses.length;k++) {
+						assertSame(expected[k], accesses[k]);
+					}
+				}
+				assertEquals(ReflectionClassAccess.class, expected[0].getClass());
+			} finally {
+				executor.shutdown();
+			}
+		}
+	}
+
+	@Test
+	public void upcastTest() {
+		Context context=Context.createRootContext(new DefaultTypeLoader().overlay(NodeOverlay.class));
+		Leaf leaf=new Leaf();
+		leaf.name="leaf";
+		Holder holder=new Holder();
+		holder.leaf=leaf;
+		// Nothing to cast: The holder is not copied
+		assertSame(holder, context.upcast(holder));
+		Node node=new Node();
+		node.name="node";
+		holder.nodes=new Node[] { null, node };
+		holder.list=Arrays.asList(node, null);
+		Holder upcasted=context.upcast(holder);
+		assertNotSame(holder, upcasted);
+		assertSame(leaf, upcasted.leaf);
+		assertNotSame(holder.nodes, upcasted.nodes);
+		assertEquals(null, upcasted.nodes[0]);
+		assertEquals(NodeOverlay.class, upcasted.nodes[1].getClass());
+		assertEquals("node", upcasted.nodes[1].name);
+		assertEquals(Node.class, holder.nodes[1].getClass());
+		assertEquals(2, upcasted.list.size());
+		assertEquals(NodeOverlay.class, upcasted.list.get(0).getClass());
+		assertEquals(null, upcasted.list.get(1));
+	}
+
+	public static class Node {
+		private static ClassTypeDefinition DESCR=new ClassTypeDefinition(Node.class);
+		static {
+			DESCR.createBuilder()
+				.createField("name", PrimitiveTypeDefinition.getTypeDescription(String.class)).setOptional(true).build()
+				.createField("next", DESCR).setOptional(true).build()
+				.build();
+		}
+		public static TypeDefinition getTypeDescription() {
+			return DESCR;
+		}
+		String name;
+		Node next;
+
+		public Node() {
+		}
+	}
+
+	@Overlay
+	public static class NodeOverlay extends Node {
+	}
+
+	public static class Leaf {
+		private static ClassTypeDefinition DESCR=new ClassTypeDefinition(Leaf.class);
+		static {
+			DESCR.createBuilder()
+				.createField("name", PrimitiveTypeDefinition.getTypeDescription(String.class)).setOptional(true).build()
+				.build();
+		}
+		public static TypeDefinition getTypeDescription() {
+			return DESCR;
+		}
+		String name;
+
+		public Leaf() {
+		}
+	}
+
+	public static class Holder {
+		private static ClassTypeDefinition DESCR=new ClassTypeDefinition(Holder.class);
+		static {
+			DESCR.createBuilder()
+				.createField("leaf", Leaf.getTypeDescription()).setOptional(true).build()
+				.createField("nodes", new ArrayTypeDefinition(Node.getTypeDescription())).setOptional(true).build()
+				.createField("list", new ArrayTypeDefinition(Node.getTypeDescription())).setOptional(true).build()
+				.build();
+		}
+		public static TypeDefinition getTypeDescription() {
+			return DESCR;
+		}
+		Leaf leaf;
+		Node[] nodes;
+		List<Node> list;
+
+		public Holder() {
+		}
+	}
+}
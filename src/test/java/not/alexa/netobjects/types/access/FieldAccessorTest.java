@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 Not Alexa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package not.alexa.netobjects.types.access;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import not.alexa.netobjects.BaseException;
+import not.alexa.netobjects.utils.TypeUtils;
+
+public class FieldAccessorTest {
+
+	public FieldAccessorTest() {
+	}
+
+	private static FieldAccessor createFieldAccessor(String name,boolean methods) throws Exception {
+		String s=Character.toUpperCase(name.charAt(0))+name.substring(1);
+		java.lang.reflect.Field field=Data.class.getDeclaredField(name);
+		return new FieldAccessor(name,TypeUtils.resolveClass(field.getType()),field,
+				methods?Data.class.getDeclaredMethod("get"+s):null,
+				methods?Data.class.getDeclaredMethod("set"+s,field.getType()):null);
+	}
+
+	@Test
+	public void fieldTest() throws Exception {
+		Data data=new Data();
+		FieldAccessor count=createFieldAccessor("count",false);
+		FieldAccessor text=createFieldAccessor("text",false);
+		count.set(null, data, 17);
+		assertEquals(17, count.get(null, data));
+		// Widening is supported for primitive fields
+		count.set(null, data, (short)18);
+		assertEquals(18, data.count);
+		text.set(null, data, "Hello");
+		assertEquals("Hello", text.get(null, data));
+		text.set(null, data, null);
+		assertNull(text.get(null, data));
+		try {
+			count.set(null, data, "Hello");
+			fail();
+		} catch(BaseException e) {
+		}
+	}
+
+	@Test
+	public void methodTest() throws Exception {
+		Data data=new Data();
+		FieldAccessor count=createFieldAccessor("count",true);
+		FieldAccessor text=createFieldAccessor("text",true);
+		count.set(null, data, 17);
+		assertEquals(17, count.get(null, data));
+		count.set(null, data, (byte)18);
+		assertEquals(18, data.count);
+		text.set(null, data, "Hello");
+		assertEquals("Hello", data.text);
+		assertEquals(3, data.calls);
+		try {
+			text.set(null, data, 1);
+			fail();
+		} catch(BaseException e) {
+		}
+	}
+
+	private static class Data {
+		private int count;
+		private String text;
+		private int calls;
+
+		@SuppressWarnings("unused")
+		private int getCount() {
+			return count;
+		}
+
+		@SuppressWarnings("unused")
+		private void setCount(int count) {
+			calls++;
+			this.count=count;
+		}
+
+		@SuppressWarnings("unused")
+		private String getText() {
+			return text;
+		}
+
+		@SuppressWarnings("unused")
+		private void setText(String text) {
+			calls++;
+			this.text=text;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2024 Not Alexa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package not.alexa.netobjects.types.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import not.alexa.netobjects.types.access.AccessContext;
+import not.alexa.netobjects.types.access.FieldAccessor.Getter;
+import not.alexa.netobjects.types.access.FieldAccessor.Setter;
+
+public class PatternFilterTest {
+
+	public PatternFilterTest() {
+	}
+
+	@Test
+	public void filterTest() throws Throwable {
+		PatternFilter filter=new PatternFilter();
+		Pattern[] holder=new Pattern[1];
+		Setter setter=filter.filter(new Setter() {
+			@Override
+			public void invoke(AccessContext context, Object o, Object v) throws Throwable {
+				holder[0]=(Pattern)v;
+			}
+		});
+		Getter getter=filter.filter(new Getter() {
+			@Override
+			public Object invoke(AccessContext context, Object o) throws Throwable {
+				return holder[0];
+			}
+		});
+		setter.invoke(null, null, "a+b");
+		Pattern pattern=holder[0];
+		assertEquals("a+b", getter.invoke(null, null));
+		// Compiled patterns are shared
+		setter.invoke(null, null, "a+b");
+		assertSame(pattern, holder[0]);
+		setter.invoke(null, null, null);
+		assertNull(getter.invoke(null, null));
+	}
+
+	@Test
+	public void cacheTest() {
+		// Start with an empty cache independent of patterns compiled by other tests
+		PatternFilter.clearCache();
+		Pattern pattern=PatternFilter.compile("cached.*");
+		assertSame(pattern, PatternFilter.compile("cached.*"));
+		for(int i=0;i<PatternFilter.CACHE_SIZE;i++) {
+			PatternFilter.compile("p"+i);
+		}
+		// The cache is bounded
+		assertNotSame(pattern, PatternFilter.compile("cached.*"));
+	}
+}